@@ -24,7 +24,7 @@ import org.openspaces.core.cluster.ClusterInfo;
 
 import java.util.Collection;
 
-public abstract class AbstractSpaceDataSourceDecorator extends AbstractSpaceDataSource {
+public abstract class AbstractSpaceDataSourceDecorator extends AbstractSpaceDataSource implements AutoCloseable {
 
 	private final AbstractSpaceDataSource abstractSpaceDataSource;
 
@@ -77,4 +77,11 @@ public abstract class AbstractSpaceDataSourceDecorator extends AbstractSpaceData
 		return abstractSpaceDataSource.loadObjects(aClass, t);
 	}
 
+	@Override
+	public void close() throws Exception {
+		if (abstractSpaceDataSource instanceof AutoCloseable) {
+			((AutoCloseable) abstractSpaceDataSource).close();
+		}
+	}
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Loads objects on a background thread once initial load is complete, and hands each loaded object to a writer,
+ * which typically writes it to the space. <p>
+ *
+ * Collections are loaded one at a time, in the order they are submitted. A failure to load a collection is logged,
+ * and does not stop loading of the following collections. A failure to write a single object, for instance since
+ * it has already been loaded on demand or written to the space, is counted and does not stop loading of the
+ * remaining objects.
+ */
+final class BackgroundLoader {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final Consumer<Object> writer;
+	private final ExecutorService executor;
+	private final LongAdder numFailedObjects = new LongAdder();
+
+	BackgroundLoader(Consumer<Object> writer) {
+		this.writer = Objects.requireNonNull(writer);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Ymer-Background-Load-");
+		threadFactory.setDaemon(true);
+		this.executor = Executors.newSingleThreadExecutor(threadFactory);
+	}
+
+	/**
+	 * Queues loading of the objects from the given collection, the stream is created and consumed on the background thread.
+	 */
+	void load(String collectionName, Supplier<Stream<?>> objects) {
+		executor.execute(() -> loadAll(collectionName, objects));
+	}
+
+	/**
+	 * Returns the number of loaded objects that the writer failed to write.
+	 */
+	long getNumFailedObjects() {
+		return numFailedObjects.sum();
+	}
+
+	private void loadAll(String collectionName, Supplier<Stream<?>> objects) {
+		log.info("Begin loading remaining objects for collection {} in background", collectionName);
+		long start = System.currentTimeMillis();
+		long numLoadedObjects = 0;
+		long numFailedObjects = 0;
+		try (Stream<?> stream = objects.get()) {
+			Iterator<?> it = stream.iterator();
+			while (it.hasNext()) {
+				Object object = it.next();
+				try {
+					writer.accept(object);
+					numLoadedObjects++;
+				} catch (RuntimeException e) {
+					numFailedObjects++;
+					this.numFailedObjects.increment();
+					log.debug("Failed to write {} loaded in background from {}", object, collectionName, e);
+				}
+			}
+			log.info("Loaded {} remaining documents from {} in background in {} milliseconds! Failed to write {} documents",
+					numLoadedObjects, collectionName, System.currentTimeMillis() - start, numFailedObjects);
+		} catch (RuntimeException e) {
+			log.error("Failed to load remaining documents from {} in background, {} documents were loaded", collectionName, numLoadedObjects, e);
+		}
+	}
+
+}
@@ -19,13 +19,24 @@ import static com.avanza.ymer.PerformedOperationsListener.OperationType.READ_BAT
 import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.LongAdder;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
 
 import org.bson.Document;
 import org.slf4j.Logger;
@@ -37,15 +48,24 @@ import com.gigaspaces.sync.OperationsBatchData;
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 
 final class BulkMirroredObjectWriter {
 
+	static final int CONVERSION_CHUNK_SIZE = 64;
+
 	private static final Logger logger = LoggerFactory.getLogger(BulkMirroredObjectWriter.class);
 
 	private final SpaceMirrorContext mirror;
 	private final DocumentWriteExceptionHandler exceptionHandler;
 	private final MirroredObjectFilterer objectFilterer;
 	private final PerformedOperationsListener operationsListener;
+	private final ReloadableYmerProperties ymerProperties;
+	private final Executor collectionWriteExecutor;
+	private final Executor conversionExecutor;
+	private final Map<String, OperationCoalescingStatistics> coalescingStatistics = new ConcurrentHashMap<>();
+	private final Map<String, WrittenDocumentCache> writtenDocumentsByCollection = new ConcurrentHashMap<>();
+	private volatile int maxCachedDocumentsPerCollection = 0;
 
 	BulkMirroredObjectWriter(SpaceMirrorContext mirror,
 			DocumentWriteExceptionHandler exceptionHandler,
@@ -58,11 +78,59 @@ final class BulkMirroredObjectWriter {
 			DocumentWriteExceptionHandler exceptionHandler,
 			MirroredObjectFilterer objectFilterer,
 			PerformedOperationsListener operationsListener
+	) {
+		this(mirror, exceptionHandler, objectFilterer, operationsListener, ReloadableYmerProperties.builder().build(), Runnable::run, Runnable::run);
+	}
+
+	/**
+	 * @param collectionWriteExecutor executes the bulk write of each collection in a batch. Changes to different
+	 *                                collections are written concurrently when the executor runs tasks in parallel.
+	 * @param conversionExecutor      converts the space objects of a collection to documents, in chunks of
+	 *                                {@value #CONVERSION_CHUNK_SIZE} objects, before they are written. When the
+	 *                                executor runs tasks in parallel, the {@link PreWriteProcessor} plugins are called
+	 *                                concurrently and must be thread safe.
+	 */
+	BulkMirroredObjectWriter(SpaceMirrorContext mirror,
+			DocumentWriteExceptionHandler exceptionHandler,
+			MirroredObjectFilterer objectFilterer,
+			PerformedOperationsListener operationsListener,
+			ReloadableYmerProperties ymerProperties,
+			Executor collectionWriteExecutor,
+			Executor conversionExecutor
 	) {
 		this.mirror = requireNonNull(mirror);
 		this.exceptionHandler = requireNonNull(exceptionHandler);
 		this.objectFilterer = requireNonNull(objectFilterer);
 		this.operationsListener = requireNonNull(operationsListener);
+		this.ymerProperties = requireNonNull(ymerProperties);
+		this.collectionWriteExecutor = requireNonNull(collectionWriteExecutor);
+		this.conversionExecutor = requireNonNull(conversionExecutor);
+	}
+
+	/**
+	 * Enables updates of only the fields that differ from the last written version of a document, rather than
+	 * replacing the whole document. The last written version of at most the given number of documents per collection
+	 * is cached, updates of other documents replace them. 0 disables diff updates.
+	 * <p>
+	 * A cached document is only valid as long as no one else than this writer changes it in the database, which is
+	 * not detected. Diff updates of documents that are missing in the database are written again as replaces.
+	 */
+	void setMaxCachedDocumentsForDiffUpdates(int maxCachedDocumentsPerCollection) {
+		this.maxCachedDocumentsPerCollection = maxCachedDocumentsPerCollection;
+		writtenDocumentsByCollection.clear();
+	}
+
+	@Nullable
+	private WrittenDocumentCache getWrittenDocuments(String collectionName) {
+		int maxSize = maxCachedDocumentsPerCollection;
+		return maxSize > 0 ? writtenDocumentsByCollection.computeIfAbsent(collectionName, x -> new WrittenDocumentCache(maxSize)) : null;
+	}
+
+	/**
+	 * Returns the statistics of coalesced operations for the given collection.
+	 */
+	OperationCoalescingStatistics getCoalescingStatistics(String collectionName) {
+		return coalescingStatistics.computeIfAbsent(collectionName, x -> new OperationCoalescingStatistics());
 	}
 
 	public void executeBulk(InstanceMetadata metadata, OperationsBatchData batch) {
@@ -72,30 +140,180 @@ final class BulkMirroredObjectWriter {
 		for (DataSyncOperation bulkItem : objectFilterer.filterSpaceObjects(batch.getBatchDataItems())) {
 			String collectionName = mirror.getCollectionName(bulkItem.getDataAsObject().getClass());
 			List<MongoBulkChange> bulkChanges = changesByCollection.computeIfAbsent(collectionName, x -> new ArrayList<>());
+			Object spaceId = bulkItem.supportsGetSpaceId() ? bulkItem.getSpaceId() : null;
 
 			switch (bulkItem.getDataSyncOperationType()) {
 				case WRITE:
-					bulkChanges.add(new MongoBulkChange(MirrorOperation.INSERT, bulkItem.getDataAsObject()));
+					bulkChanges.add(new MongoBulkChange(MirrorOperation.INSERT, spaceId, bulkItem.getDataAsObject()));
 					break;
 				case UPDATE:
 				case PARTIAL_UPDATE:
-					bulkChanges.add(new MongoBulkChange(MirrorOperation.UPDATE, bulkItem.getDataAsObject()));
+					bulkChanges.add(new MongoBulkChange(MirrorOperation.UPDATE, spaceId, bulkItem.getDataAsObject()));
 					break;
 				case REMOVE:
-					bulkChanges.add(new MongoBulkChange(MirrorOperation.REMOVE, bulkItem.getDataAsObject()));
+					bulkChanges.add(new MongoBulkChange(MirrorOperation.REMOVE, spaceId, bulkItem.getDataAsObject()));
 					break;
 				default:
 					throw new UnsupportedOperationException("Bulkoperation " + bulkItem.getDataSyncOperationType() + " is not supported");
 			}
 		}
 
-		changesByCollection.forEach((collectionName, bulkChanges) -> {
-			List<MongoBulkChange> remainingChanges = bulkChanges;
-			int attempt = 1;
-			while (!remainingChanges.isEmpty()) {
-				remainingChanges = executeMongoDbBulk(collectionName, metadata, remainingChanges, attempt++);
+		boolean coalesce = ymerProperties.coalesceBulkOperations();
+		boolean unordered = ymerProperties.useUnorderedBulkWrites();
+		List<CompletableFuture<Void>> collectionWrites = new ArrayList<>(changesByCollection.size());
+		changesByCollection.forEach((collectionName, bulkChanges) -> collectionWrites.add(CompletableFuture.runAsync(
+				() -> writeCollection(collectionName, metadata, bulkChanges, coalesce, unordered), collectionWriteExecutor)));
+		awaitAll(collectionWrites);
+	}
+
+	private void writeCollection(String collectionName,
+			InstanceMetadata metadata,
+			List<MongoBulkChange> bulkChanges,
+			boolean coalesce,
+			boolean unordered) {
+		List<MongoBulkChange> remainingChanges = bulkChanges;
+		if (coalesce) {
+			remainingChanges = coalesce(bulkChanges);
+			getCoalescingStatistics(collectionName).add(bulkChanges.size(), bulkChanges.size() - remainingChanges.size());
+		}
+		// converted once, so that retries write the same documents without converting them again
+		remainingChanges = convert(remainingChanges, metadata);
+		WrittenDocumentCache writtenDocuments = getWrittenDocuments(collectionName);
+		if (writtenDocuments != null) {
+			remainingChanges = toDiffUpdates(remainingChanges, writtenDocuments);
+		}
+		// the order of changes can only be kept per space id, so changes without one are written in order
+		if (unordered && remainingChanges.stream().allMatch(change -> change.spaceId != null)) {
+			executeUnorderedMongoDbBulks(collectionName, remainingChanges);
+			return;
+		}
+		int attempt = 1;
+		while (!remainingChanges.isEmpty()) {
+			remainingChanges = executeMongoDbBulk(collectionName, remainingChanges, attempt++);
+		}
+	}
+
+	/**
+	 * Converts the space objects of the given changes to documents, in chunks on the conversion executor, and handles
+	 * the changes that fail conversion.
+	 *
+	 * @return the changes that were converted, in the given order
+	 */
+	private List<MongoBulkChange> convert(List<MongoBulkChange> changes, InstanceMetadata metadata) {
+		List<CompletableFuture<Void>> conversions = new ArrayList<>();
+		for (int from = 0; from < changes.size(); from += CONVERSION_CHUNK_SIZE) {
+			List<MongoBulkChange> chunk = changes.subList(from, Math.min(from + CONVERSION_CHUNK_SIZE, changes.size()));
+			conversions.add(CompletableFuture.runAsync(() -> chunk.forEach(change -> change.convert(mirror, metadata)), conversionExecutor));
+		}
+		conversions.forEach(CompletableFuture::join);
+
+		List<MongoBulkChange> convertedChanges = new ArrayList<>(changes.size());
+		for (MongoBulkChange change : changes) {
+			if (change.conversionFailure == null) {
+				convertedChanges.add(change);
+				continue;
 			}
-		});
+			mirror.onMirrorException(change.conversionFailure, change.operation, change.object);
+			exceptionHandler.handleException(change.conversionFailure, "Conversion failed, operation: " + change.operation + ", change: " + change.object);
+			operationsListener.increment(OperationType.FAILURE, 1);
+		}
+		return convertedChanges;
+	}
+
+	/**
+	 * Waits for the writes of all collections, so that the batch is only acknowledged once every collection is
+	 * written, and then rethrows the first failure, if any.
+	 */
+	private static void awaitAll(List<CompletableFuture<Void>> collectionWrites) {
+		RuntimeException failure = null;
+		for (CompletableFuture<Void> collectionWrite : collectionWrites) {
+			try {
+				collectionWrite.join();
+			} catch (CompletionException e) {
+				RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				if (failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Collapses the changes of each space id to their net effect, keeping the relative order of the remaining changes.
+	 * The merged change takes the position of the last change it replaces: <p>
+	 *
+	 * <ul>
+	 *     <li>INSERT followed by UPDATE becomes an UPDATE, written as an upserting replace, of the updated object.
+	 *     An INSERT of the updated object would fail if the INSERT was already written by a batch that is delivered
+	 *     again after a failure, and the updated object would be lost.</li>
+	 *     <li>INSERT followed by REMOVE is dropped altogether</li>
+	 *     <li>UPDATE followed by UPDATE or REMOVE becomes the latter</li>
+	 * </ul>
+	 *
+	 * Other sequences, for example a REMOVE followed by an INSERT, are kept as is. Changes without a space id are
+	 * never coalesced.
+	 */
+	static List<MongoBulkChange> coalesce(List<MongoBulkChange> changes) {
+		List<MongoBulkChange> coalesced = new ArrayList<>(changes.size());
+		Map<Object, Integer> pendingChangeIndexById = new HashMap<>();
+		for (MongoBulkChange change : changes) {
+			if (change.spaceId == null) {
+				coalesced.add(change);
+				continue;
+			}
+			Integer pendingIndex = pendingChangeIndexById.get(change.spaceId);
+			MongoBulkChange merged = change;
+			if (pendingIndex != null) {
+				MongoBulkChange pending = coalesced.get(pendingIndex);
+				if (pending.operation == MirrorOperation.INSERT && change.operation == MirrorOperation.REMOVE) {
+					coalesced.set(pendingIndex, null);
+					pendingChangeIndexById.remove(change.spaceId);
+					continue;
+				} else if ((pending.operation == MirrorOperation.INSERT || pending.replacesInsert) && change.operation == MirrorOperation.UPDATE) {
+					merged = MongoBulkChange.replacingInsert(change.spaceId, change.object);
+					coalesced.set(pendingIndex, null);
+				} else if (pending.operation == MirrorOperation.UPDATE && change.operation != MirrorOperation.INSERT) {
+					coalesced.set(pendingIndex, null);
+				}
+			}
+			pendingChangeIndexById.put(change.spaceId, coalesced.size());
+			coalesced.add(merged);
+		}
+		coalesced.removeIf(Objects::isNull);
+		return coalesced;
+	}
+
+	/**
+	 * Turns each update of a document with a known previous version, either earlier in the given changes or last
+	 * written to the database, into an update of the fields that differ from it. Updates that change nothing are
+	 * dropped.
+	 *
+	 * @return the changes to write, in the given order
+	 */
+	static List<MongoBulkChange> toDiffUpdates(List<MongoBulkChange> changes, WrittenDocumentCache writtenDocuments) {
+		List<MongoBulkChange> changesToWrite = new ArrayList<>(changes.size());
+		// null for documents removed earlier in the batch
+		Map<Object, Document> previousVersionsInBatch = new HashMap<>();
+		for (MongoBulkChange change : changes) {
+			Object id = change.getDocumentId();
+			Document previousVersion = previousVersionsInBatch.containsKey(id) ? previousVersionsInBatch.get(id) : writtenDocuments.get(id);
+			previousVersionsInBatch.put(id, change.operation == MirrorOperation.REMOVE ? null : change.document);
+			// an update that replaces an insert must be written as an upsert, which a diff update is not
+			if (change.operation == MirrorOperation.UPDATE && !change.replacesInsert && previousVersion != null) {
+				DocumentDiff diff = DocumentDiff.between(previousVersion, change.document);
+				if (diff.isEmpty()) {
+					continue;
+				}
+				change.diff = diff;
+			}
+			changesToWrite.add(change);
+		}
+		return changesToWrite;
 	}
 
 	/**
@@ -105,73 +323,33 @@ final class BulkMirroredObjectWriter {
 	 * This happens if a row in a bulkWrite fails and needs to be skipped.
 	 */
 	private List<MongoBulkChange> executeMongoDbBulk(String collectionName,
-			InstanceMetadata metadata,
 			List<MongoBulkChange> changes,
 			int attempt) {
-		final Map<Integer, Integer> bulkChangeIdToChangeMap = new HashMap<>();
 		try {
 			DocumentCollection collection = mirror.getDocumentCollection(collectionName);
+			ExpectedOperations expectedOperations = new ExpectedOperations();
 
-			AtomicInteger bulkChangeId = new AtomicInteger(0);
-			LongAdder insertions = new LongAdder();
-			LongAdder updates = new LongAdder();
-			LongAdder removals = new LongAdder();
-
-			BulkWriteResult result = collection.orderedBulkWrite(bulkWriter -> {
-				for (int i = 0; i < changes.size(); i++) {
-					MongoBulkChange change = changes.get(i);
-
-					Document versionedDocument;
-					try {
-						versionedDocument = mirror.toVersionedDocument(change.object, metadata);
-						mirror.getPreWriteProcessing(change.object.getClass()).preWrite(versionedDocument);
-					} catch (Exception e) {
-						// after the first attempt, this error will already have been logged & handled earlier on
-						if (attempt == 1) {
-							mirror.onMirrorException(e, change.operation, change.object);
-							exceptionHandler.handleException(e, "Conversion failed, operation: " + change.operation + ", change: " + change.object);
-							operationsListener.increment(OperationType.FAILURE, 1);
-						}
-						continue;
-					}
-
-					switch (change.operation) {
-						case INSERT:
-							bulkWriter.insert(versionedDocument);
-							insertions.increment();
-							break;
-						case UPDATE:
-							bulkWriter.replace(versionedDocument);
-							updates.increment();
-							break;
-						case REMOVE:
-							bulkWriter.delete(versionedDocument);
-							removals.increment();
-							break;
-					}
-
-					// keep track of which id in the MongoDB bulk maps to which index in this list as some items might be skipped
-					bulkChangeIdToChangeMap.put(bulkChangeId.getAndIncrement(), i);
-				}
-			});
+			BulkWriteResult result = collection.orderedBulkWrite(bulkWriter -> addChanges(bulkWriter, changes, expectedOperations));
 
 			addResultToStatistics(result);
-			try {
-				checkBulkResultForWarnings(insertions.intValue(), updates.intValue(), removals.intValue(), result);
-			} catch (Exception e) {
-				logger.warn("Error while checking for warnings in bulkWrite result", e);
-			}
-			return emptyList();
+			checkBulkResult(expectedOperations, result);
+			return onWritten(collectionName, changes, getMatchedUpdates(changes, changes, result), emptyList());
 		} catch (MongoBulkWriteException e) {
 			addResultToStatistics(e.getWriteResult());
 
 			BulkWriteError writeError = e.getWriteErrors().get(0); // always a single write error as we use an ordered operation
-			MongoBulkChange failedChange = changes.get(writeError.getIndex());
+			int failedChangeIndex = writeError.getIndex();
+			MongoBulkChange failedChange = changes.get(failedChangeIndex);
 			mirror.onMirrorException(e, failedChange.operation, failedChange.object);
 			operationsListener.increment(OperationType.FAILURE, 1);
 
-			int failedChangeIndex = bulkChangeIdToChangeMap.get(writeError.getIndex());
-			List<MongoBulkChange> remainingChanges = changes.subList(failedChangeIndex + 1, changes.size());
+			List<MongoBulkChange> remainingChanges = new ArrayList<>(changes.subList(failedChangeIndex + 1, changes.size()));
+			// an ordered bulkWrite stops at the failing change, so the result only covers the changes before it
+			List<MongoBulkChange> writtenChanges = changes.subList(0, failedChangeIndex);
+			List<MongoBulkChange> changesToReplace = onWritten(collectionName, writtenChanges,
+					getMatchedUpdates(changes, writtenChanges, e.getWriteResult()), remainingChanges);
+			onFailed(collectionName, List.of(failedChange), remainingChanges);
+			remainingChanges.addAll(0, changesToReplace);
 
 			if (!remainingChanges.isEmpty()) {
 				logger.error("Bulk write failed attempt {} on a {} operation in collection {}: \"{}\". Will continue writing remaining {} changes",
@@ -183,12 +361,211 @@ final class BulkMirroredObjectWriter {
 
 			return remainingChanges;
 		} catch (Exception e) {
+			onFailed(collectionName, changes, emptyList());
 			exceptionHandler.handleException(e, "Operation: Bulk write, changes: " + changes);
 			operationsListener.increment(OperationType.FAILURE, changes.size());
 			return emptyList();
 		}
 	}
 
+	/**
+	 * Writes the given changes in rounds of non-ordered bulkWrites, where each round contains at most one change per
+	 * space id. Mongo reports every failing change of a round at once, so no change is retried. A round is only
+	 * written once the previous round is completed, so the changes of each space id are still applied in order.
+	 */
+	private void executeUnorderedMongoDbBulks(String collectionName, List<MongoBulkChange> changes) {
+		List<List<MongoBulkChange>> rounds = splitIntoRounds(changes);
+		for (int round = 0; round < rounds.size(); round++) {
+			List<MongoBulkChange> followingChanges = rounds.subList(round + 1, rounds.size()).stream()
+					.flatMap(List::stream)
+					.collect(toList());
+			if (!executeUnorderedMongoDbBulk(collectionName, rounds.get(round), followingChanges)) {
+				rounds.subList(round + 1, rounds.size()).forEach(skippedChanges ->
+						operationsListener.increment(OperationType.FAILURE, skippedChanges.size()));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Splits the given changes into rounds, where round n contains the n:th change of each space id in the order they
+	 * appear in the given changes. All changes must have a space id.
+	 */
+	static List<List<MongoBulkChange>> splitIntoRounds(List<MongoBulkChange> changes) {
+		List<List<MongoBulkChange>> rounds = new ArrayList<>();
+		Map<Object, Integer> numChangesById = new HashMap<>();
+		for (MongoBulkChange change : changes) {
+			int round = numChangesById.merge(requireNonNull(change.spaceId), 1, Integer::sum) - 1;
+			if (round == rounds.size()) {
+				rounds.add(new ArrayList<>());
+			}
+			rounds.get(round).add(change);
+		}
+		return rounds;
+	}
+
+	/**
+	 * @return false if the bulkWrite failed as a whole, in which case the following rounds are not written
+	 */
+	private boolean executeUnorderedMongoDbBulk(String collectionName, List<MongoBulkChange> changes, List<MongoBulkChange> followingChanges) {
+		try {
+			DocumentCollection collection = mirror.getDocumentCollection(collectionName);
+			ExpectedOperations expectedOperations = new ExpectedOperations();
+
+			BulkWriteResult result = collection.nonOrderedBulkWrite(bulkWriter -> addChanges(bulkWriter, changes, expectedOperations));
+
+			addResultToStatistics(result);
+			checkBulkResult(expectedOperations, result);
+			List<MongoBulkChange> changesToReplace = onWritten(collectionName, changes, getMatchedUpdates(changes, changes, result), followingChanges);
+			return changesToReplace.isEmpty() || executeUnorderedMongoDbBulk(collectionName, changesToReplace, followingChanges);
+		} catch (MongoBulkWriteException e) {
+			addResultToStatistics(e.getWriteResult());
+			operationsListener.increment(OperationType.FAILURE, e.getWriteErrors().size());
+			List<MongoBulkChange> writtenChanges = new ArrayList<>(changes);
+			List<MongoBulkChange> failedChanges = new ArrayList<>();
+			for (BulkWriteError writeError : e.getWriteErrors()) {
+				MongoBulkChange failedChange = changes.get(writeError.getIndex());
+				mirror.onMirrorException(e, failedChange.operation, failedChange.object);
+				logger.error("Unordered bulk write failed on a {} operation in collection {}: \"{}\"",
+						failedChange.operation, collectionName, writeError.getMessage());
+				writtenChanges.set(writeError.getIndex(), null);
+				failedChanges.add(failedChange);
+			}
+			writtenChanges.removeIf(Objects::isNull);
+			List<MongoBulkChange> changesToReplace = onWritten(collectionName, writtenChanges,
+					getMatchedUpdates(changes, writtenChanges, e.getWriteResult()), followingChanges);
+			onFailed(collectionName, failedChanges, followingChanges);
+			return changesToReplace.isEmpty() || executeUnorderedMongoDbBulk(collectionName, changesToReplace, followingChanges);
+		} catch (Exception e) {
+			onFailed(collectionName, changes, followingChanges);
+			exceptionHandler.handleException(e, "Operation: Bulk write, changes: " + changes);
+			operationsListener.increment(OperationType.FAILURE, changes.size());
+			return false;
+		}
+	}
+
+	/**
+	 * Caches the documents of the given changes as written, when diff updates are enabled.
+	 * <p>
+	 * Unlike a replace, an update of only the fields that differ is lost if the document is missing in the database.
+	 * The result does not tell which updates didn't match a document, so if not all of them did, the updated documents
+	 * are forgotten and the last diff update of each document is returned, to be written again as a replace of the
+	 * whole document. Documents changed by any of the following changes are left to those changes.
+	 *
+	 * @param matchedUpdates the number of updates that matched a document when writing the given changes
+	 * @return the diff updates to write again as replaces
+	 */
+	private List<MongoBulkChange> onWritten(String collectionName,
+			List<MongoBulkChange> writtenChanges,
+			int matchedUpdates,
+			List<MongoBulkChange> followingChanges) {
+		long updates = writtenChanges.stream().filter(change -> change.operation == MirrorOperation.UPDATE && !change.replacesInsert).count();
+		boolean updatesMatched = matchedUpdates >= updates;
+		WrittenDocumentCache writtenDocuments = getWrittenDocuments(collectionName);
+		if (writtenDocuments != null) {
+			for (MongoBulkChange change : writtenChanges) {
+				if (change.operation == MirrorOperation.REMOVE || (change.operation == MirrorOperation.UPDATE && !updatesMatched)) {
+					writtenDocuments.invalidate(change.getDocumentId());
+				} else {
+					writtenDocuments.put(change.document);
+				}
+			}
+		}
+		if (updatesMatched) {
+			return emptyList();
+		}
+		Map<Object, MongoBulkChange> lastChangeById = new LinkedHashMap<>();
+		writtenChanges.forEach(change -> lastChangeById.put(change.getDocumentId(), change));
+		followingChanges.forEach(change -> lastChangeById.remove(change.getDocumentId()));
+		List<MongoBulkChange> changesToReplace = lastChangeById.values().stream()
+				.filter(change -> change.diff != null)
+				.collect(toList());
+		if (!changesToReplace.isEmpty()) {
+			logger.warn("Not all updates in collection {} matched a document, will replace the {} documents that were updated by field",
+					collectionName, changesToReplace.size());
+			changesToReplace.forEach(change -> change.diff = null);
+		}
+		return changesToReplace;
+	}
+
+	/**
+	 * Returns the number of documents matched by the updates among the given written changes, not counting the updates
+	 * that replace an insert and matched a document inserted by an earlier delivery of the batch.
+	 *
+	 * @param bulkChanges the changes of the bulkWrite, in order
+	 */
+	private static int getMatchedUpdates(List<MongoBulkChange> bulkChanges, List<MongoBulkChange> writtenChanges, BulkWriteResult result) {
+		Set<Integer> upsertedIndexes = result.getUpserts().stream()
+				.map(BulkWriteUpsert::getIndex)
+				.collect(toSet());
+		Set<MongoBulkChange> written = new HashSet<>(writtenChanges);
+		int matchedReplacedInserts = 0;
+		for (int index = 0; index < bulkChanges.size(); index++) {
+			MongoBulkChange change = bulkChanges.get(index);
+			if (change.replacesInsert && !upsertedIndexes.contains(index) && written.contains(change)) {
+				matchedReplacedInserts++;
+			}
+		}
+		return result.getMatchedCount() - matchedReplacedInserts;
+	}
+
+	/**
+	 * Forgets the documents of the given failed changes, as their state in the database is unknown, and lets the
+	 * following changes of the same documents replace them rather than update only the fields that differ.
+	 */
+	private void onFailed(String collectionName, Collection<MongoBulkChange> failedChanges, List<MongoBulkChange> followingChanges) {
+		WrittenDocumentCache writtenDocuments = getWrittenDocuments(collectionName);
+		if (writtenDocuments == null) {
+			return;
+		}
+		Set<Object> failedIds = new HashSet<>();
+		for (MongoBulkChange change : failedChanges) {
+			writtenDocuments.invalidate(change.getDocumentId());
+			failedIds.add(change.getDocumentId());
+		}
+		followingChanges.stream()
+				.filter(change -> failedIds.contains(change.getDocumentId()))
+				.forEach(change -> change.diff = null);
+	}
+
+	/**
+	 * Adds the converted documents of the given changes to the bulkWrite, in order.
+	 */
+	private static void addChanges(DocumentCollection.BulkWriter bulkWriter, List<MongoBulkChange> changes, ExpectedOperations expectedOperations) {
+		for (MongoBulkChange change : changes) {
+			switch (change.operation) {
+				case INSERT:
+					bulkWriter.insert(change.document);
+					expectedOperations.insertions++;
+					break;
+				case UPDATE:
+					if (change.diff != null) {
+						bulkWriter.updateFields(change.getDocumentId(), change.diff.getFieldsToSet(), change.diff.getFieldsToUnset());
+					} else {
+						bulkWriter.replace(change.document);
+					}
+					if (change.replacesInsert) {
+						expectedOperations.upserts++;
+					} else {
+						expectedOperations.updates++;
+					}
+					break;
+				case REMOVE:
+					bulkWriter.delete(change.document);
+					expectedOperations.removals++;
+					break;
+			}
+		}
+	}
+
+	private void checkBulkResult(ExpectedOperations expectedOperations, BulkWriteResult result) {
+		try {
+			checkBulkResultForWarnings(expectedOperations.insertions, expectedOperations.updates, expectedOperations.upserts, expectedOperations.removals, result);
+		} catch (Exception e) {
+			logger.warn("Error while checking for warnings in bulkWrite result", e);
+		}
+	}
+
 	private void addResultToStatistics(BulkWriteResult result) {
 		try {
 			operationsListener.increment(OperationType.INSERT, result.getInsertedCount());
@@ -199,7 +576,11 @@ final class BulkMirroredObjectWriter {
 		}
 	}
 
-	private void checkBulkResultForWarnings(int expectedInsertions, int expectedUpdates, int expectedRemovals, BulkWriteResult result) {
+	/**
+	 * @param expectedUpserts the number of updates that replace an insert, which either insert the document or, if it
+	 *                        was already inserted, match it
+	 */
+	private void checkBulkResultForWarnings(int expectedInsertions, int expectedUpdates, int expectedUpserts, int expectedRemovals, BulkWriteResult result) {
 		if (expectedInsertions != result.getInsertedCount()) {
 			logger.warn("Current bulk write contained {} insertions, but {} documents were inserted by this operation. "
 							+ "MongoDB and space seems to be out of sync!",
@@ -207,7 +588,7 @@ final class BulkMirroredObjectWriter {
 					result.getInsertedCount() > 0 ? "only " + result.getInsertedCount() : "no");
 		}
 
-		if (expectedUpdates != result.getMatchedCount()) {
+		if (result.getMatchedCount() < expectedUpdates || result.getMatchedCount() > expectedUpdates + expectedUpserts) {
 			StringBuilder warningMessage = new StringBuilder();
 			warningMessage.append("Tried to update ").append(expectedUpdates).append(" documents in current bulk write, but ");
 			if (result.getMatchedCount() > 0) {
@@ -242,15 +623,78 @@ final class BulkMirroredObjectWriter {
 		}
 	}
 
-	private static class MongoBulkChange {
+	private static final class ExpectedOperations {
+		private int insertions;
+		private int updates;
+		private int upserts;
+		private int removals;
+	}
+
+	static final class MongoBulkChange {
 		private final MirrorOperation operation;
+		private final Object spaceId;
 		private final Object object;
+		private Document document;
+		private Exception conversionFailure;
+		private DocumentDiff diff;
+		private boolean replacesInsert;
 
-		MongoBulkChange(MirrorOperation operation, Object object) {
+		MongoBulkChange(MirrorOperation operation, Object spaceId, Object object) {
 			this.operation = operation;
+			this.spaceId = spaceId;
 			this.object = object;
 		}
 
+		/**
+		 * Creates an update of an object whose insert earlier in the same batch it replaces.
+		 */
+		static MongoBulkChange replacingInsert(Object spaceId, Object object) {
+			MongoBulkChange change = new MongoBulkChange(MirrorOperation.UPDATE, spaceId, object);
+			change.replacesInsert = true;
+			return change;
+		}
+
+		/**
+		 * Converts the object to the document to write, or records the failure to do so.
+		 */
+		void convert(SpaceMirrorContext mirror, InstanceMetadata metadata) {
+			try {
+				document = convertWithRetry(mirror, metadata);
+			} catch (Exception e) {
+				conversionFailure = e;
+			}
+		}
+
+		private Document convertWithRetry(SpaceMirrorContext mirror, InstanceMetadata metadata) {
+			try {
+				return toDocument(mirror, metadata);
+			} catch (RuntimeException e) {
+				// MongoConverter is not thread-safe due to a bug in AbstractMappingContext.addPersistentEntity(),
+				// which may fail the first conversions of a type when objects are converted concurrently.
+				// Resolve it temporarily by retrying, like when loading documents.
+				logger.warn("Failed to convert object={}. Retrying.", object, e);
+				return toDocument(mirror, metadata);
+			}
+		}
+
+		private Document toDocument(SpaceMirrorContext mirror, InstanceMetadata metadata) {
+			Document versionedDocument = mirror.toVersionedDocument(object, metadata);
+			mirror.getPreWriteProcessing(object.getClass()).preWrite(versionedDocument);
+			return versionedDocument;
+		}
+
+		Object getDocumentId() {
+			return document.get("_id");
+		}
+
+		MirrorOperation getOperation() {
+			return operation;
+		}
+
+		Object getObject() {
+			return object;
+		}
+
 		@Override
 		public String toString() {
 			return operation + ": " + object;
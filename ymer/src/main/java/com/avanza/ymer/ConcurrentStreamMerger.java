@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Consumes several source streams concurrently and merges their elements into a single stream. <p>
+ *
+ * At most {@code parallelism} sources are consumed at the same time, and sources are started in
+ * the order they are given. Elements are handed over to the consumer through a bounded queue, so a
+ * source blocks when the consumer falls behind. A failure in any source is rethrown to the consumer. <p>
+ *
+ * The order of elements from different sources is not defined. Closing the merged stream stops all
+ * sources that are still running.
+ */
+final class ConcurrentStreamMerger<T> implements Iterator<T>, AutoCloseable {
+
+	private static final Object END_OF_SOURCE = new Object();
+
+	private final BlockingQueue<Object> queue;
+	private final ExecutorService executor;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final int numSources;
+	private int numCompletedSources = 0;
+	private T next;
+
+	private ConcurrentStreamMerger(List<Supplier<Stream<T>>> sources, int parallelism, int queueCapacity, String threadNamePrefix) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be a positive integer, was parallelism=" + parallelism + "!");
+		}
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.numSources = sources.size();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+		threadFactory.setDaemon(true);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, numSources)), threadFactory);
+		sources.forEach(source -> executor.execute(() -> drain(source)));
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns a stream with all elements from the given {@code sources}, which are consumed on
+	 * at most {@code parallelism} threads named with the given prefix.
+	 */
+	static <T> Stream<T> merge(List<Supplier<Stream<T>>> sources, int parallelism, int queueCapacity, String threadNamePrefix) {
+		ConcurrentStreamMerger<T> merger = new ConcurrentStreamMerger<>(sources, parallelism, queueCapacity, threadNamePrefix);
+		return StreamSupport.stream(spliteratorUnknownSize(merger, 0), false)
+				.onClose(merger::close);
+	}
+
+	private void drain(Supplier<Stream<T>> source) {
+		try {
+			try (Stream<T> stream = source.get()) {
+				Iterator<T> elements = stream.iterator();
+				while (elements.hasNext()) {
+					queue.put(elements.next());
+				}
+			} catch (RuntimeException | Error e) {
+				failure.compareAndSet(null, e);
+			}
+			queue.put(END_OF_SOURCE);
+		} catch (InterruptedException e) {
+			// Merged stream has been closed
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean hasNext() {
+		while (next == null && numCompletedSources < numSources) {
+			Object element = take();
+			if (failure.get() != null) {
+				close();
+				throw new IllegalStateException("Failed to read source stream", failure.get());
+			}
+			if (element == END_OF_SOURCE) {
+				numCompletedSources++;
+			} else {
+				next = (T) element;
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T result = next;
+		next = null;
+		return result;
+	}
+
+	private Object take() {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("Interrupted while waiting for source streams", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		queue.clear();
+	}
+
+}
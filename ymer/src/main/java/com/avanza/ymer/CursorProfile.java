@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.mongodb.client.FindIterable;
+
+/**
+ * The options applied to every cursor opened when reading documents from a collection, see
+ * {@link CursorProfileDefinition}.
+ */
+final class CursorProfile {
+
+	static final CursorProfile DEFAULT = new CursorProfile(null, null, false);
+
+	@Nullable
+	private final Integer batchSize;
+	@Nullable
+	private final Duration maxTime;
+	private final boolean noCursorTimeout;
+
+	CursorProfile(@Nullable Integer batchSize, @Nullable Duration maxTime, boolean noCursorTimeout) {
+		this.batchSize = batchSize;
+		this.maxTime = maxTime;
+		this.noCursorTimeout = noCursorTimeout;
+	}
+
+	<T> FindIterable<T> applyTo(FindIterable<T> iterable) {
+		FindIterable<T> result = iterable;
+		if (batchSize != null) {
+			result = result.batchSize(batchSize);
+		}
+		if (maxTime != null) {
+			result = result.maxTime(maxTime.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		if (noCursorTimeout) {
+			result = result.noCursorTimeout(true);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "CursorProfile [batchSize=" + batchSize + ", maxTime=" + maxTime + ", noCursorTimeout=" + noCursorTimeout + "]";
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.time.Duration;
+
+public final class CursorProfileDefinition {
+
+	private Integer batchSize;
+	private Duration maxTime;
+	private boolean noCursorTimeout = false;
+
+	/**
+	 * The number of documents to return in each batch of a cursor. A larger batch size reduces the number of round
+	 * trips to persistent storage when reading many documents, at the cost of more memory per batch.
+	 * Defaults to the batch size of the driver.
+	 */
+	public CursorProfileDefinition batchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be a positive integer, was batchSize=" + batchSize + "!");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * The maximum time a query may run on the server before it is aborted.
+	 * Defaults to no limit.
+	 */
+	public CursorProfileDefinition maxTime(Duration maxTime) {
+		if (maxTime.isNegative() || maxTime.isZero()) {
+			throw new IllegalArgumentException("maxTime must be positive, was maxTime=" + maxTime + "!");
+		}
+		this.maxTime = maxTime;
+		return this;
+	}
+
+	/**
+	 * Whether to prevent the server from timing out idle cursors, which would otherwise fail an InitialLoad that
+	 * spends more than ten minutes between two batches.
+	 * Defaults to false.
+	 */
+	public CursorProfileDefinition noCursorTimeout(boolean noCursorTimeout) {
+		this.noCursorTimeout = noCursorTimeout;
+		return this;
+	}
+
+	CursorProfile build() {
+		return new CursorProfile(batchSize, maxTime, noCursorTimeout);
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.avanza.ymer.plugin.PreWriteProcessor;
+import com.mongodb.bulk.BulkWriteResult;
+
+/**
+ * Spools patched documents to a local file during initial load, and writes them back to the database at a limited
+ * rate once initial load is complete, see {@link DeferredWriteBackDefinition}. <p>
+ *
+ * A patched document is only written back if the document in the database still has the format version it had
+ * when it was patched, so documents that have been written by the mirror since are left as they are. This also
+ * makes it safe to write back a spool that was left behind by an earlier run.
+ */
+final class DeferredPatchedDocumentWriteBack {
+
+	static final int BATCH_SIZE = 500;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final DocumentCollection documentCollection;
+	private final PreWriteProcessor preWriteProcessor;
+	private final String collectionName;
+	private final PatchedDocumentSpool spool;
+	private final int documentsPerSecond;
+	private final int batchSize;
+	private final LongAdder numWrittenDocuments = new LongAdder();
+	private final LongAdder numSkippedDocuments = new LongAdder();
+
+	DeferredPatchedDocumentWriteBack(DocumentCollection documentCollection, PreWriteProcessor preWriteProcessor, String collectionName, PatchedDocumentSpool spool, int documentsPerSecond) {
+		this(documentCollection, preWriteProcessor, collectionName, spool, documentsPerSecond, BATCH_SIZE);
+	}
+
+	DeferredPatchedDocumentWriteBack(DocumentCollection documentCollection, PreWriteProcessor preWriteProcessor, String collectionName, PatchedDocumentSpool spool, int documentsPerSecond, int batchSize) {
+		this.documentCollection = Objects.requireNonNull(documentCollection);
+		this.preWriteProcessor = Objects.requireNonNull(preWriteProcessor);
+		this.collectionName = Objects.requireNonNull(collectionName);
+		this.spool = Objects.requireNonNull(spool);
+		this.documentsPerSecond = documentsPerSecond;
+		this.batchSize = Math.min(batchSize, documentsPerSecond);
+	}
+
+	/**
+	 * Appends the given document to the spool. The patched document is run through the {@link PreWriteProcessor}
+	 * before it is spooled, so that the spool only holds documents in the form they are stored in the database.
+	 */
+	void write(PatchedDocument patchedDocument) {
+		Document newVersion = preWriteProcessor.preWrite(new Document(patchedDocument.getNewVersion()));
+		spool.append(new PatchedDocument(patchedDocument.getOldVersion(), newVersion));
+	}
+
+	/**
+	 * Signals that no more documents will be written during this initial load.
+	 */
+	void complete() {
+		spool.close();
+		if (spool.getNumAppendedEntries() > 0) {
+			log.info("Spooled {} patched documents of {} to {}", spool.getNumAppendedEntries(), collectionName, spool.getFile());
+		}
+	}
+
+	/**
+	 * Starts writing back all spooled documents, including any documents left in the spool by an earlier run, on a
+	 * background thread. The spool is deleted when all documents are written. If writing fails the spool is left as
+	 * it is, to be written back on the next initial load.
+	 */
+	CompletableFuture<Void> startWriteBack() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Ymer-Deferred-Write-Back-" + collectionName + "-");
+		threadFactory.setDaemon(true);
+		ExecutorService writer = Executors.newSingleThreadExecutor(threadFactory);
+		CompletableFuture<Void> result = CompletableFuture.runAsync(this::writeBackSpool, writer);
+		writer.shutdown();
+		return result.whenComplete((ignored, e) -> {
+			if (e != null) {
+				log.error("Failed to write back patched documents of {} from {}, spool is kept until next initial load", collectionName, spool.getFile(), e);
+			}
+		});
+	}
+
+	long getNumWrittenDocuments() {
+		return numWrittenDocuments.sum();
+	}
+
+	long getNumSkippedDocuments() {
+		return numSkippedDocuments.sum();
+	}
+
+	private void writeBackSpool() {
+		if (!spool.exists()) {
+			return;
+		}
+		log.info("Writing back patched documents of {} from {} at up to {} documents per second", collectionName, spool.getFile(), documentsPerSecond);
+		long start = System.currentTimeMillis();
+		spool.readEntries(batchSize, this::writeBatch);
+		spool.delete();
+		log.info("Wrote back {} patched documents of {} in {} milliseconds, skipped {} documents that were changed after they were patched",
+				numWrittenDocuments.sum(), collectionName, System.currentTimeMillis() - start, numSkippedDocuments.sum());
+	}
+
+	private void writeBatch(List<Document> entries) {
+		long start = System.nanoTime();
+		List<Document> entriesWithSameId = new ArrayList<>(entries.size());
+		for (Document entry : entries) {
+			Document newVersion = entry.get(PatchedDocumentSpool.DOCUMENT, Document.class);
+			if (Objects.equals(entry.get(PatchedDocumentSpool.ID), newVersion.get("_id"))) {
+				entriesWithSameId.add(entry);
+			} else {
+				writeWithChangedId(entry.get(PatchedDocumentSpool.ID), entry.getInteger(PatchedDocumentSpool.FORMAT_VERSION), newVersion);
+			}
+		}
+		if (!entriesWithSameId.isEmpty()) {
+			BulkWriteResult result = documentCollection.nonOrderedBulkWrite(bulkWriter -> entriesWithSameId.forEach(entry ->
+					bulkWriter.replaceIfFormatVersion(entry.get(PatchedDocumentSpool.DOCUMENT, Document.class),
+							entry.getInteger(PatchedDocumentSpool.FORMAT_VERSION))));
+			numWrittenDocuments.add(result.getMatchedCount());
+			numSkippedDocuments.add(entriesWithSameId.size() - result.getMatchedCount());
+		}
+		awaitRateLimit(start, entries.size());
+	}
+
+	private void writeWithChangedId(Object oldId, int formatVersion, Document newVersion) {
+		Document oldVersion = documentCollection.findById(oldId);
+		if (oldVersion == null || oldVersion.getInteger(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, 1) != formatVersion) {
+			numSkippedDocuments.increment();
+			return;
+		}
+		documentCollection.replace(oldVersion, newVersion);
+		numWrittenDocuments.increment();
+	}
+
+	private void awaitRateLimit(long batchStartNanos, int numDocuments) {
+		long remainingNanos = TimeUnit.SECONDS.toNanos(numDocuments) / documentsPerSecond - (System.nanoTime() - batchStartNanos);
+		if (remainingNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remainingNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while writing back patched documents of " + collectionName, e);
+			}
+		}
+	}
+
+}
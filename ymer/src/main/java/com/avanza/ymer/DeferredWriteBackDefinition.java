@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+public final class DeferredWriteBackDefinition {
+
+	private static final Path DEFAULT_SPOOL_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "ymer-write-back");
+	private static final int DEFAULT_DOCUMENTS_PER_SECOND = 1_000;
+
+	private boolean enabled = false;
+	private Path spoolDirectory = DEFAULT_SPOOL_DIRECTORY;
+	private int documentsPerSecond = DEFAULT_DOCUMENTS_PER_SECOND;
+
+	/**
+	 * Whether to defer writing back patched documents until initial load is complete.
+	 * When enabled, patched documents are spooled to a local file during initial load and written back to
+	 * persistent storage at a limited rate after initial load is complete.
+	 * Has no effect unless patched documents are written back, see
+	 * {@link MirroredObjectDefinition#writeBackPatchedDocuments(boolean)}.
+	 */
+	public DeferredWriteBackDefinition enabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	/**
+	 * The directory to spool patched documents to. A spool that is left in this directory, for instance when
+	 * the space is restarted before all documents are written back, is written back after the next initial load.
+	 * Defaults to a directory named ymer-write-back in the temporary directory of the JVM.
+	 */
+	public DeferredWriteBackDefinition spoolDirectory(Path spoolDirectory) {
+		this.spoolDirectory = Objects.requireNonNull(spoolDirectory);
+		return this;
+	}
+
+	/**
+	 * The maximum rate at which spooled documents are written back to persistent storage.
+	 * Defaults to 1000 documents per second.
+	 */
+	public DeferredWriteBackDefinition documentsPerSecond(int documentsPerSecond) {
+		if (documentsPerSecond < 1) {
+			throw new IllegalArgumentException("documentsPerSecond must be a positive integer, was documentsPerSecond=" + documentsPerSecond + "!");
+		}
+		this.documentsPerSecond = documentsPerSecond;
+		return this;
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	Path getSpoolDirectory() {
+		return spoolDirectory;
+	}
+
+	int getDocumentsPerSecond() {
+		return documentsPerSecond;
+	}
+}
@@ -15,7 +15,11 @@
  */
 package com.avanza.ymer;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -42,8 +46,27 @@ interface DocumentCollection {
 
 	Stream<Document> findAll(SpaceObjectFilter<?> objectFilter);
 
+	/**
+	 * Reads all documents accepted by the given filter with an _id within the given range, see {@link #splitIdRanges(int)}. <p>
+	 */
+	Stream<Document> findAll(SpaceObjectFilter<?> objectFilter, Document idRange);
+
+	/**
+	 * Splits the _id space of the underlying mongo collection into roughly equally sized ranges based on a
+	 * sample of the collection. Each range is returned as a query document, and together the ranges cover all
+	 * documents in the collection exactly once. <p>
+	 *
+	 * Returns a single empty document, matching all documents, if the collection cannot be split.
+	 */
+	List<Document> splitIdRanges(int numRanges);
+
 	Stream<Document> findByTemplate(Document template);
 
+	/**
+	 * Reads documents matching the given template without decoding them, see {@link RawDocument}. <p>
+	 */
+	Stream<RawDocument> findRawByTemplate(Document template);
+
 	/**
 	 * Returns a document with a given id. <p>
 	 *
@@ -52,6 +75,43 @@ interface DocumentCollection {
 
 	Stream<Document> findByQuery(Query query);
 
+	/**
+	 * Returns the winning plan that the query planner chooses for the given query, see {@link #findByQuery(Query)}. <p>
+	 *
+	 * Returns empty if the query cannot be explained.
+	 */
+	Optional<Document> explain(Query query);
+
+	/**
+	 * Reads all documents with any of the given ids. <p>
+	 */
+	Stream<Document> findByIds(Collection<Object> ids);
+
+	/**
+	 * Returns the uncompressed size in bytes of all documents in the underlying mongo collection, as reported by
+	 * the collection statistics. <p>
+	 *
+	 * Returns empty if the statistics are not available, for instance when the user is not allowed to read them.
+	 */
+	OptionalLong getDataSize();
+
+	/**
+	 * Returns the current position in the change stream of the underlying mongo collection, see
+	 * {@link #findIdsChangedSince(Document, int)}. <p>
+	 *
+	 * Returns empty if changes cannot be tracked, for instance when the database is not a replica set.
+	 */
+	Optional<Document> getChangeStreamPosition();
+
+	/**
+	 * Returns the ids of all documents that have been inserted, updated, replaced or deleted after the given
+	 * position in the change stream. <p>
+	 *
+	 * Returns empty if the changes cannot be determined, i.e. if the position is no longer available in the change
+	 * stream, if the collection has been dropped or renamed, or if more than maxChanges documents have changed.
+	 */
+	Optional<Set<Object>> findIdsChangedSince(Document position, int maxChanges);
+
 	/**
 	 * Replaces a given document in the underlying mongo collection with a new
 	 * document. <p>
@@ -102,11 +162,29 @@ interface DocumentCollection {
 
 		void replace(Document document);
 
+		/**
+		 * Replaces the document with the same id as the given document. Unlike {@link #replace(Document)}, nothing is
+		 * written if there is no document with the given id.
+		 */
+		void replaceExisting(Document document);
+
+		/**
+		 * Replaces the document with the same id as the given document, provided that the document in the database
+		 * still has the given format version. Documents without a format version have version 1.
+		 */
+		void replaceIfFormatVersion(Document document, int formatVersion);
+
 		void delete(Document document);
 
 		void updatePartialByIds(Set<Object> ids, Map<String, Object> fieldsToSet);
 
 		void unsetFieldsPartialByIds(Set<Object> ids, Set<String> fieldsToUnset);
 
+		/**
+		 * Sets and unsets the given fields, which may be dotted paths, of the document with the given id. Unlike
+		 * {@link #replace(Document)}, nothing is written if there is no document with the given id.
+		 */
+		void updateFields(Object id, Map<String, Object> fieldsToSet, Set<String> fieldsToUnset);
+
 	}
 }
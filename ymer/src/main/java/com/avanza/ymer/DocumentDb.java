@@ -58,9 +58,17 @@ final class DocumentDb {
 	DocumentCollection getCollection(String name, ReadPreference readPreference) {
 		return provider.get(name, readPreference);
 	}
+
+	DocumentCollection getCollection(String name, ReadPreference readPreference, CursorProfile cursorProfile) {
+		return provider.get(name, readPreference, cursorProfile);
+	}
 	
 	interface Provider {
 		DocumentCollection get(String name, ReadPreference readPreference);
+
+		default DocumentCollection get(String name, ReadPreference readPreference, CursorProfile cursorProfile) {
+			return get(name, readPreference);
+		}
 	}
 	
 	private static final class MongoDocumentDb implements DocumentDb.Provider {
@@ -81,10 +89,19 @@ final class DocumentDb {
 
 		@Override
 		public DocumentCollection get(String name, ReadPreference readPreference) {
+			return get(name, readPreference, CursorProfile.DEFAULT);
+		}
+
+		@Override
+		public DocumentCollection get(String name, ReadPreference readPreference, CursorProfile cursorProfile) {
 			MongoCollection<Document> collection = mongoDatabase.getCollection(name);
-			collection.withReadPreference(Optional.ofNullable(readPreference)
-												  .orElse(this.readPreference));
-			return new MongoDocumentCollection(collection);
+			Optional<ReadPreference> effectiveReadPreference = Optional.ofNullable(readPreference)
+					.or(() -> Optional.ofNullable(this.readPreference));
+			if (effectiveReadPreference.isPresent()) {
+				// MongoCollection is immutable, withReadPreference returns a new instance
+				collection = collection.withReadPreference(effectiveReadPreference.get());
+			}
+			return new MongoDocumentCollection(collection, cursorProfile);
 		}
 	}
 
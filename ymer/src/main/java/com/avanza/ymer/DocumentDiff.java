@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.bson.Document;
+
+/**
+ * The fields that differ between two versions of a document, as the paths to set and to unset in order to turn the
+ * old version into the new one. Embedded documents are compared field by field, all other values, including arrays,
+ * are compared as a whole.
+ */
+final class DocumentDiff {
+
+	private final Map<String, Object> fieldsToSet = new LinkedHashMap<>();
+	private final Set<String> fieldsToUnset = new LinkedHashSet<>();
+
+	private DocumentDiff() {
+	}
+
+	static DocumentDiff between(Document oldVersion, Document newVersion) {
+		DocumentDiff diff = new DocumentDiff();
+		diff.addDifferences("", oldVersion, newVersion);
+		return diff;
+	}
+
+	private void addDifferences(String pathPrefix, Document oldVersion, Document newVersion) {
+		newVersion.forEach((field, newValue) -> {
+			Object oldValue = oldVersion.get(field);
+			if (oldValue instanceof Document && newValue instanceof Document) {
+				addDifferences(pathPrefix + field + ".", (Document) oldValue, (Document) newValue);
+			} else if (!oldVersion.containsKey(field) || !Objects.equals(oldValue, newValue)) {
+				fieldsToSet.put(pathPrefix + field, newValue);
+			}
+		});
+		oldVersion.keySet().stream()
+				.filter(field -> !newVersion.containsKey(field))
+				.forEach(field -> fieldsToUnset.add(pathPrefix + field));
+	}
+
+	Map<String, Object> getFieldsToSet() {
+		return Collections.unmodifiableMap(fieldsToSet);
+	}
+
+	Set<String> getFieldsToUnset() {
+		return Collections.unmodifiableSet(fieldsToUnset);
+	}
+
+	boolean isEmpty() {
+		return fieldsToSet.isEmpty() && fieldsToUnset.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "DocumentDiff [fieldsToSet=" + fieldsToSet.keySet() + ", fieldsToUnset=" + fieldsToUnset + "]";
+	}
+}
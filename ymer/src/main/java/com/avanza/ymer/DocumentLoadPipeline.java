@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.Collections.emptyIterator;
+import static java.util.Collections.emptyList;
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Patches and converts documents read from a cursor on an {@link InitialLoadExecutor}. <p>
+ *
+ * A single reader thread consumes the source stream and hands documents over to the executor in batches.
+ * Processed batches are queued in cursor order in a bounded queue that is drained by the consumer of the
+ * returned stream, so a slow consumer throttles both the workers and the cursor. <p>
+ *
+ * @param <D> the type of documents read from the source
+ * @param <R> the result of processing a single document
+ */
+final class DocumentLoadPipeline<D, R> implements AutoCloseable {
+
+	static final int BATCH_SIZE = 100;
+
+	private static final CompletableFuture<List<Object>> END_OF_STREAM = CompletableFuture.completedFuture(emptyList());
+
+	private final Function<D, Optional<R>> processor;
+	private final ExecutorService reader;
+	private final InitialLoadExecutor workers;
+	private final BlockingQueue<CompletableFuture<? extends List<?>>> processedBatches;
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+	private final LongAdder busyNanos = new LongAdder();
+	private final long startNanos = System.nanoTime();
+
+	DocumentLoadPipeline(Function<D, Optional<R>> processor, InitialLoadExecutor workers, String name) {
+		this.processor = processor;
+		this.workers = workers;
+		this.reader = Executors.newSingleThreadExecutor(daemonThreadFactory("Ymer-Load-Reader-" + name + "-"));
+		this.processedBatches = new ArrayBlockingQueue<>(workers.getPoolSize() * 2);
+	}
+
+	/**
+	 * Starts reading from the given documents and returns a stream with the processed results, in the
+	 * same order as the source. Closing the returned stream stops the reader and cancels batches that
+	 * have not yet been processed.
+	 */
+	Stream<R> process(Stream<D> documents) {
+		reader.execute(() -> read(documents));
+		reader.shutdown();
+		return StreamSupport.stream(spliteratorUnknownSize(new ProcessedIterator(), 0), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Returns the number of batches that are being processed or waiting to be consumed.
+	 */
+	int getQueueDepth() {
+		return processedBatches.size();
+	}
+
+	/**
+	 * Returns the share of the executor's thread time, between 0 and 1, that has been spent processing
+	 * documents for this pipeline since start.
+	 */
+	double getWorkerUtilization() {
+		long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+		return Math.min(1.0, busyNanos.sum() / ((double) elapsedNanos * workers.getPoolSize()));
+	}
+
+	/**
+	 * Returns the number of workers that are currently processing a batch for this pipeline.
+	 */
+	int getActiveWorkers() {
+		return activeWorkers.get();
+	}
+
+	private void read(Stream<D> documents) {
+		try {
+			try (documents) {
+				Iterator<D> it = documents.iterator();
+				while (it.hasNext()) {
+					List<D> batch = new ArrayList<>(BATCH_SIZE);
+					while (batch.size() < BATCH_SIZE && it.hasNext()) {
+						batch.add(it.next());
+					}
+					processedBatches.put(CompletableFuture.supplyAsync(() -> processBatch(batch), workers));
+				}
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				// Errors are handed over as well, as the consumer would otherwise wait for the end of the stream forever
+				processedBatches.put(CompletableFuture.failedFuture(e));
+			}
+			processedBatches.put(END_OF_STREAM);
+		} catch (InterruptedException e) {
+			// Pipeline has been closed
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<R> processBatch(List<D> batch) {
+		activeWorkers.incrementAndGet();
+		long start = System.nanoTime();
+		try {
+			List<R> result = new ArrayList<>(batch.size());
+			for (D document : batch) {
+				processor.apply(document).ifPresent(result::add);
+			}
+			return result;
+		} finally {
+			busyNanos.add(System.nanoTime() - start);
+			workers.batchProcessed(batch.size(), start);
+			activeWorkers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void close() {
+		reader.shutdownNow();
+		// The executor is shared with other pipelines, so only batches belonging to this pipeline are cancelled
+		CompletableFuture<? extends List<?>> batch;
+		while ((batch = processedBatches.poll()) != null) {
+			batch.cancel(false);
+		}
+	}
+
+	private static CustomizableThreadFactory daemonThreadFactory(String threadNamePrefix) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	private class ProcessedIterator implements Iterator<R> {
+		private Iterator<?> current = emptyIterator();
+		private boolean endOfStream = false;
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext() && !endOfStream) {
+				CompletableFuture<? extends List<?>> batch = take();
+				if (batch == END_OF_STREAM) {
+					endOfStream = true;
+				} else {
+					current = join(batch).iterator();
+				}
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public R next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (R) current.next();
+		}
+
+		private CompletableFuture<? extends List<?>> take() {
+			try {
+				return processedBatches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new IllegalStateException("Interrupted while waiting for processed documents", e);
+			}
+		}
+
+		private List<?> join(CompletableFuture<? extends List<?>> batch) {
+			try {
+				return batch.join();
+			} catch (CompletionException e) {
+				close();
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+
+}
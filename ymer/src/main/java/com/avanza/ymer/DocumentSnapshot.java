@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.MongoClientSettings;
+
+/**
+ * A local snapshot of the documents of a collection that were loaded by one partition. <p>
+ *
+ * The snapshot file holds a header document followed by the documents, each stored as bson, which starts with
+ * the length of the document. The file is read through memory mapped regions, so reading a snapshot does not
+ * copy it through the heap more than once. A new snapshot is written to a temporary file, which replaces the
+ * current snapshot only when it is complete.
+ */
+final class DocumentSnapshot {
+
+	private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+	private static final long MAX_REGION_SIZE = 256L * 1024 * 1024;
+
+	private final Path file;
+
+	DocumentSnapshot(Path file) {
+		this.file = Objects.requireNonNull(file);
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads the header of the snapshot, or returns empty if there is no snapshot.
+	 */
+	Optional<Document> readHeader() {
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		try (Reader reader = new Reader(file)) {
+			return Optional.ofNullable(reader.next());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read " + file, e);
+		}
+	}
+
+	/**
+	 * Reads all documents of the snapshot, not including the header. The returned stream must be closed.
+	 */
+	Stream<Document> readDocuments() {
+		Reader reader;
+		try {
+			reader = new Reader(file);
+			reader.next();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read " + file, e);
+		}
+		Iterator<Document> documents = new Iterator<>() {
+			private Document next = reader.nextUnchecked();
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Document next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				Document result = next;
+				next = reader.nextUnchecked();
+				return result;
+			}
+		};
+		return StreamSupport.stream(spliteratorUnknownSize(documents, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(reader::closeUnchecked);
+	}
+
+	/**
+	 * Starts writing a new snapshot with the given header. The current snapshot, if any, is kept until the new
+	 * snapshot is committed.
+	 */
+	Writer createWriter(Document header) {
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			return new Writer(file.resolveSibling(file.getFileName() + ".tmp"), header);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to create snapshot " + file, e);
+		}
+	}
+
+	/**
+	 * Deletes the snapshot, if it exists.
+	 */
+	void delete() {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to delete " + file, e);
+		}
+	}
+
+	final class Writer implements AutoCloseable {
+
+		private final Path tmpFile;
+		private final OutputStream out;
+		private long numDocuments = 0;
+		private boolean closed = false;
+
+		private Writer(Path tmpFile, Document header) throws IOException {
+			this.tmpFile = tmpFile;
+			this.out = new BufferedOutputStream(Files.newOutputStream(tmpFile));
+			write(header);
+		}
+
+		synchronized void append(Document document) {
+			write(document);
+			numDocuments++;
+		}
+
+		private void write(Document document) {
+			BasicOutputBuffer buffer = new BasicOutputBuffer();
+			CODEC.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+			try {
+				buffer.pipe(out);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write to " + tmpFile, e);
+			}
+		}
+
+		synchronized void append(RawBsonDocument document) {
+			try {
+				Channels.newChannel(out).write(document.getByteBuffer().asNIO());
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write to " + tmpFile, e);
+			}
+			numDocuments++;
+		}
+
+		/**
+		 * Completes the new snapshot, which replaces the current snapshot.
+		 */
+		synchronized void commit() {
+			try {
+				out.close();
+				closed = true;
+				Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to commit snapshot " + file, e);
+			}
+		}
+
+		/**
+		 * The number of documents written, not including the header.
+		 */
+		synchronized long getNumDocuments() {
+			return numDocuments;
+		}
+
+		/**
+		 * Discards the new snapshot unless it has been committed.
+		 */
+		@Override
+		public synchronized void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				out.close();
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to discard snapshot " + tmpFile, e);
+			}
+		}
+	}
+
+	/**
+	 * Reads documents from memory mapped regions of a snapshot file, remapping when a document crosses the end of
+	 * the current region. A region stays valid after the file channel is closed.
+	 */
+	private static final class Reader implements AutoCloseable {
+
+		private final Path file;
+		private final FileChannel channel;
+		private final long size;
+		private ByteBuffer region;
+		private long regionStart;
+		private long position = 0;
+
+		Reader(Path file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+			this.size = channel.size();
+		}
+
+		Document next() throws IOException {
+			if (position + 4 > size) {
+				return null;
+			}
+			int length = slice(position, 4).getInt();
+			if (length < 5 || position + length > size) {
+				throw new IOException("Corrupt document of length " + length + " at position " + position + " in " + file);
+			}
+			byte[] bytes = new byte[length];
+			slice(position, length).get(bytes);
+			position += length;
+			return new RawBsonDocument(bytes).decode(CODEC);
+		}
+
+		Document nextUnchecked() {
+			try {
+				return next();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read " + file, e);
+			}
+		}
+
+		private ByteBuffer slice(long offset, int length) throws IOException {
+			if (region == null || offset < regionStart || offset + length > regionStart + region.capacity()) {
+				long regionSize = Math.min(Math.max(MAX_REGION_SIZE, length), size - offset);
+				region = channel.map(FileChannel.MapMode.READ_ONLY, offset, regionSize);
+				regionStart = offset;
+			}
+			ByteBuffer slice = region.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			slice.position((int) (offset - regionStart));
+			slice.limit(slice.position() + length);
+			return slice;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		void closeUnchecked() {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to close " + file, e);
+			}
+		}
+	}
+
+}
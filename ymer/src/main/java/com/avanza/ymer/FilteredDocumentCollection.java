@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.IndexOptions;
+
+/**
+ * Restricts all documents read through the decorated collection to those matching a filter. Writes are delegated
+ * unchanged.
+ */
+final class FilteredDocumentCollection implements DocumentCollection {
+
+	private final DocumentCollection delegate;
+	private final Document filter;
+
+	FilteredDocumentCollection(DocumentCollection delegate, Document filter) {
+		this.delegate = Objects.requireNonNull(delegate);
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	@Override
+	public Stream<Document> findAll() {
+		return findByTemplate(new Document());
+	}
+
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter) {
+		return findByTemplate(MongoPartitionFilter.createDocumentFilter(objectFilter));
+	}
+
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter, Document idRange) {
+		return findByTemplate(and(MongoPartitionFilter.createDocumentFilter(objectFilter), idRange));
+	}
+
+	@Override
+	public List<Document> splitIdRanges(int numRanges) {
+		return delegate.splitIdRanges(numRanges);
+	}
+
+	@Override
+	public Stream<Document> findByTemplate(Document template) {
+		return delegate.findByTemplate(and(filter, template));
+	}
+
+	@Override
+	public Stream<RawDocument> findRawByTemplate(Document template) {
+		return delegate.findRawByTemplate(and(filter, template));
+	}
+
+	@Override
+	public Document findById(Object id) {
+		try (Stream<Document> documents = findByTemplate(new Document("_id", id))) {
+			return documents.findFirst().orElse(null);
+		}
+	}
+
+	@Override
+	public Stream<Document> findByQuery(Query query) {
+		return delegate.findByQuery(restrict(query));
+	}
+
+	@Override
+	public Optional<Document> explain(Query query) {
+		return delegate.explain(restrict(query));
+	}
+
+	private Query restrict(Query query) {
+		BasicQuery filteredQuery = new BasicQuery(and(filter, query.getQueryObject()), query.getFieldsObject());
+		filteredQuery.setSortObject(query.getSortObject());
+		Integer batchSize = query.getMeta().getCursorBatchSize();
+		if (batchSize != null) {
+			filteredQuery.cursorBatchSize(batchSize);
+		}
+		if (query.getHint() != null) {
+			filteredQuery.withHint(query.getHint());
+		}
+		return filteredQuery;
+	}
+
+	@Override
+	public Stream<Document> findByIds(Collection<Object> ids) {
+		return findByTemplate(new Document("_id", new Document("$in", ids)));
+	}
+
+	/**
+	 * Combines the given filters, an empty filter matches all documents.
+	 */
+	private static Document and(Document filter, Document other) {
+		if (filter.isEmpty()) {
+			return other;
+		}
+		if (other.isEmpty()) {
+			return filter;
+		}
+		return new Document("$and", List.of(filter, other));
+	}
+
+	@Override
+	public OptionalLong getDataSize() {
+		return delegate.getDataSize();
+	}
+
+	@Override
+	public Optional<Document> getChangeStreamPosition() {
+		return delegate.getChangeStreamPosition();
+	}
+
+	@Override
+	public Optional<Set<Object>> findIdsChangedSince(Document position, int maxChanges) {
+		return delegate.findIdsChangedSince(position, maxChanges);
+	}
+
+	@Override
+	public void replace(Document oldVersion, Document newVersion) {
+		delegate.replace(oldVersion, newVersion);
+	}
+
+	@Override
+	public void update(Document document) {
+		delegate.update(document);
+	}
+
+	@Override
+	public BulkWriteResult nonOrderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
+		return delegate.nonOrderedBulkWrite(bulkWriter);
+	}
+
+	@Override
+	public BulkWriteResult orderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
+		return delegate.orderedBulkWrite(bulkWriter);
+	}
+
+	@Override
+	public void insert(Document dbObject) {
+		delegate.insert(dbObject);
+	}
+
+	@Override
+	public void delete(Document document) {
+		delegate.delete(document);
+	}
+
+	@Override
+	public void insertAll(Document... documents) {
+		delegate.insertAll(documents);
+	}
+
+	@Override
+	public Stream<IndexInfo> getIndexes() {
+		return delegate.getIndexes();
+	}
+
+	@Override
+	public void dropIndex(String name) {
+		delegate.dropIndex(name);
+	}
+
+	@Override
+	public void createIndex(Document keys, IndexOptions indexOptions) {
+		delegate.createIndex(keys, indexOptions);
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The position of a scan over a collection in _id order, i.e. the _id of the last read document and the number of
+ * documents read. See {@link ResumableIdScan}. <p>
+ *
+ * A checkpoint is updated by a single reader thread and may be read by any thread.
+ */
+final class IdCheckpoint {
+
+	private final String name;
+	private final AtomicLong numDocuments = new AtomicLong();
+	private final AtomicInteger numResumes = new AtomicInteger();
+	private volatile Object lastId;
+	private volatile boolean complete = false;
+
+	IdCheckpoint(String name) {
+		this.name = Objects.requireNonNull(name);
+	}
+
+	void record(Object id) {
+		lastId = id;
+		numDocuments.incrementAndGet();
+	}
+
+	void resumed() {
+		numResumes.incrementAndGet();
+	}
+
+	void complete() {
+		complete = true;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	Object getLastId() {
+		return lastId;
+	}
+
+	long getNumDocuments() {
+		return numDocuments.get();
+	}
+
+	int getNumResumes() {
+		return numResumes.get();
+	}
+
+	boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public String toString() {
+		return name + " [documents=" + numDocuments.get() + ", lastId=" + lastId + ", resumes=" + numResumes.get() + (complete ? ", complete" : "") + "]";
+	}
+}
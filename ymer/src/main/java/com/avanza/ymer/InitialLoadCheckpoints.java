@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the checkpoints of all resumable scans started during initial load, see {@link ResumableIdScan}.
+ */
+final class InitialLoadCheckpoints implements InitialLoadCheckpointsMBean {
+
+	private final Map<String, IdCheckpoint> checkpoints = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Creates a new checkpoint with the given name, replacing any earlier checkpoint with the same name.
+	 */
+	IdCheckpoint create(String name) {
+		IdCheckpoint checkpoint = new IdCheckpoint(name);
+		checkpoints.put(name, checkpoint);
+		return checkpoint;
+	}
+
+	@Override
+	public String[] getCheckpoints() {
+		return checkpoints.values().stream()
+				.map(IdCheckpoint::toString)
+				.toArray(String[]::new);
+	}
+
+	@Override
+	public int getNumResumes() {
+		return checkpoints.values().stream()
+				.mapToInt(IdCheckpoint::getNumResumes)
+				.sum();
+	}
+}
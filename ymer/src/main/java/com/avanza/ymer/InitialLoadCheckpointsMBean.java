@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+public interface InitialLoadCheckpointsMBean {
+
+	/**
+	 * Gets the checkpoint of each resumable scan started during initial load, i.e. the number of documents read,
+	 * the _id of the last read document and the number of times the scan has been resumed
+	 */
+	String[] getCheckpoints();
+
+	/**
+	 * Gets the total number of times that a resumable scan has been resumed after a failure
+	 */
+	int getNumResumes();
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Thread pool that runs the cpu-intensive parts of initial load, i.e. patching and converting documents. <p>
+ *
+ * The pool is shared by all collections loaded by one {@link SpaceMirrorContext}, so that initial load
+ * does not compete with other work on the common fork-join pool. Idle threads are released, which
+ * means that the pool does not hold any threads once initial load is complete.
+ */
+final class InitialLoadExecutor implements Executor, InitialLoadExecutorMBean {
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final ThreadPoolExecutor executor;
+	private final LongAdder processedDocuments = new LongAdder();
+	private final LongAdder busyNanos = new LongAdder();
+	private final AtomicLong firstBatchStartNanos = new AtomicLong();
+	private final AtomicLong lastBatchEndNanos = new AtomicLong();
+
+	InitialLoadExecutor(int poolSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("poolSize must be a positive integer, was poolSize=" + poolSize + "!");
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Ymer-Initial-Load-Worker-");
+		threadFactory.setDaemon(true);
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+	/**
+	 * Records that a batch of documents, started at {@code startNanos}, has been processed.
+	 */
+	void batchProcessed(int numDocuments, long startNanos) {
+		long endNanos = System.nanoTime();
+		firstBatchStartNanos.compareAndSet(0, startNanos);
+		lastBatchEndNanos.accumulateAndGet(endNanos, Math::max);
+		busyNanos.add(endNanos - startNanos);
+		processedDocuments.add(numDocuments);
+	}
+
+	@Override
+	public int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	@Override
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public int getQueuedBatches() {
+		return executor.getQueue().size();
+	}
+
+	@Override
+	public long getNumProcessedDocuments() {
+		return processedDocuments.sum();
+	}
+
+	@Override
+	public long getDocumentsPerSecond() {
+		long activeNanos = getActiveNanos();
+		return activeNanos == 0 ? 0 : Math.round(processedDocuments.sum() * 1_000_000_000d / activeNanos);
+	}
+
+	@Override
+	public int getUtilizationPercent() {
+		long activeNanos = getActiveNanos();
+		return activeNanos == 0 ? 0 : (int) Math.min(100, Math.round(busyNanos.sum() * 100d / ((double) activeNanos * getPoolSize())));
+	}
+
+	private long getActiveNanos() {
+		long start = firstBatchStartNanos.get();
+		return start == 0 ? 0 : Math.max(0, lastBatchEndNanos.get() - start);
+	}
+
+	@Override
+	public String toString() {
+		return "InitialLoadExecutor [poolSize=" + getPoolSize()
+				+ ", processedDocuments=" + getNumProcessedDocuments()
+				+ ", documentsPerSecond=" + getDocumentsPerSecond()
+				+ ", utilizationPercent=" + getUtilizationPercent() + "]";
+	}
+}
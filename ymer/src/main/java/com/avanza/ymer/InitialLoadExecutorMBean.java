@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+public interface InitialLoadExecutorMBean {
+
+	/**
+	 * Gets the maximum number of threads used to patch and convert documents
+	 */
+	int getPoolSize();
+
+	/**
+	 * Gets the number of threads that are currently patching and converting documents
+	 */
+	int getActiveThreads();
+
+	/**
+	 * Gets the number of batches waiting for a free thread
+	 */
+	int getQueuedBatches();
+
+	/**
+	 * Gets the total number of documents patched and converted by this pool
+	 */
+	long getNumProcessedDocuments();
+
+	/**
+	 * Gets the number of documents processed per second, measured from when the first batch started
+	 * until the last batch completed
+	 */
+	long getDocumentsPerSecond();
+
+	/**
+	 * Gets the share of available thread time, in percent, spent processing documents while the pool was in use
+	 */
+	int getUtilizationPercent();
+}
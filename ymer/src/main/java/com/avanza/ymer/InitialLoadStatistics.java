@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative counters and per stage timers of the initial load of one collection. Stages are timed on every thread
+ * that takes part in loading, so the time of a stage that runs on several worker threads may exceed the wall clock
+ * time of the load. <p>
+ *
+ * Statistics are kept after initial load is complete, and accumulate over reloads.
+ */
+final class InitialLoadStatistics implements InitialLoadStatisticsMBean {
+
+	enum Stage {
+		READ, DECODE, POST_READ, PATCH, CONVERT, FILTER, WRITE_BACK, LOAD
+	}
+
+	private final Map<Stage, LongAdder> nanosByStage = new EnumMap<>(Stage.class);
+	private final LongAdder numDocuments = new LongAdder();
+	private final LongAdder numBytes = new LongAdder();
+	private final LongAdder numRejected = new LongAdder();
+	private final LongAdder numPatched = new LongAdder();
+	private final LongAdder numWrittenBack = new LongAdder();
+	private final LongAdder numCollectionScans = new LongAdder();
+
+	InitialLoadStatistics() {
+		for (Stage stage : Stage.values()) {
+			nanosByStage.put(stage, new LongAdder());
+		}
+	}
+
+	void addTime(Stage stage, long startNanos) {
+		nanosByStage.get(stage).add(System.nanoTime() - startNanos);
+	}
+
+	void documentRead() {
+		numDocuments.increment();
+	}
+
+	void bytesRead(long bytes) {
+		numBytes.add(bytes);
+	}
+
+	void documentRejected() {
+		numRejected.increment();
+	}
+
+	void documentPatched() {
+		numPatched.increment();
+	}
+
+	void documentWrittenBack() {
+		numWrittenBack.increment();
+	}
+
+	void collectionScanPlanned() {
+		numCollectionScans.increment();
+	}
+
+	@Override
+	public long getNumDocuments() {
+		return numDocuments.sum();
+	}
+
+	@Override
+	public long getNumBytes() {
+		return numBytes.sum();
+	}
+
+	@Override
+	public long getNumRejected() {
+		return numRejected.sum();
+	}
+
+	@Override
+	public long getNumPatched() {
+		return numPatched.sum();
+	}
+
+	@Override
+	public long getNumWrittenBack() {
+		return numWrittenBack.sum();
+	}
+
+	@Override
+	public long getNumCollectionScans() {
+		return numCollectionScans.sum();
+	}
+
+	@Override
+	public long getReadMillis() {
+		return getMillis(Stage.READ);
+	}
+
+	@Override
+	public long getDecodeMillis() {
+		return getMillis(Stage.DECODE);
+	}
+
+	@Override
+	public long getPostReadMillis() {
+		return getMillis(Stage.POST_READ);
+	}
+
+	@Override
+	public long getPatchMillis() {
+		return getMillis(Stage.PATCH);
+	}
+
+	@Override
+	public long getConvertMillis() {
+		return getMillis(Stage.CONVERT);
+	}
+
+	@Override
+	public long getFilterMillis() {
+		return getMillis(Stage.FILTER);
+	}
+
+	@Override
+	public long getWriteBackMillis() {
+		return getMillis(Stage.WRITE_BACK);
+	}
+
+	@Override
+	public long getLoadMillis() {
+		return getMillis(Stage.LOAD);
+	}
+
+	@Override
+	public void reset() {
+		nanosByStage.values().forEach(LongAdder::reset);
+		numDocuments.reset();
+		numBytes.reset();
+		numRejected.reset();
+		numPatched.reset();
+		numWrittenBack.reset();
+		numCollectionScans.reset();
+	}
+
+	private long getMillis(Stage stage) {
+		return TimeUnit.NANOSECONDS.toMillis(nanosByStage.get(stage).sum());
+	}
+
+	@Override
+	public String toString() {
+		return "InitialLoadStatistics [documents=" + getNumDocuments() + ", bytes=" + getNumBytes() + ", rejected=" + getNumRejected()
+				+ ", patched=" + getNumPatched() + ", writtenBack=" + getNumWrittenBack() + ", collectionScans=" + getNumCollectionScans() + ", readMillis=" + getReadMillis()
+				+ ", decodeMillis=" + getDecodeMillis() + ", postReadMillis=" + getPostReadMillis() + ", patchMillis=" + getPatchMillis()
+				+ ", convertMillis=" + getConvertMillis() + ", filterMillis=" + getFilterMillis() + ", writeBackMillis=" + getWriteBackMillis()
+				+ ", loadMillis=" + getLoadMillis() + "]";
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+public interface InitialLoadStatisticsMBean {
+
+	/**
+	 * The number of documents read from persistent storage or from a snapshot
+	 */
+	long getNumDocuments();
+
+	/**
+	 * The number of bson bytes read, only counted for documents that are read as raw bson
+	 */
+	long getNumBytes();
+
+	/**
+	 * The number of documents that were not loaded because they belong to another partition
+	 */
+	long getNumRejected();
+
+	/**
+	 * The number of documents that were patched to the current version
+	 */
+	long getNumPatched();
+
+	/**
+	 * The number of patched documents handed over for write-back to persistent storage
+	 */
+	long getNumWrittenBack();
+
+	/**
+	 * The number of initial load queries that the query planner executes as a collection scan, only checked for
+	 * queries that are expected to use an index
+	 */
+	long getNumCollectionScans();
+
+	/**
+	 * The total time spent waiting for documents from the cursors, in milliseconds
+	 */
+	long getReadMillis();
+
+	/**
+	 * The total time spent decoding raw bson, in milliseconds
+	 */
+	long getDecodeMillis();
+
+	/**
+	 * The total time spent in post read processing, in milliseconds
+	 */
+	long getPostReadMillis();
+
+	/**
+	 * The total time spent patching documents, in milliseconds
+	 */
+	long getPatchMillis();
+
+	/**
+	 * The total time spent converting documents to space objects, in milliseconds
+	 */
+	long getConvertMillis();
+
+	/**
+	 * The total time spent filtering documents and space objects by partition, in milliseconds
+	 */
+	long getFilterMillis();
+
+	/**
+	 * The total time spent handing patched documents over for write-back, including time blocked while the
+	 * write-back falls behind, in milliseconds
+	 */
+	long getWriteBackMillis();
+
+	/**
+	 * The total wall clock time spent loading the collection, in milliseconds
+	 */
+	long getLoadMillis();
+
+	/**
+	 * Resets all counters and timers
+	 */
+	void reset();
+}
@@ -20,7 +20,9 @@ import static com.avanza.ymer.util.GigaSpacesInstanceIdUtil.getInstanceId;
 import static java.util.stream.Collectors.toSet;
 
 import java.lang.reflect.Method;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -41,25 +43,54 @@ final class MirroredObject<T> {
 	public static final String DOCUMENT_FORMAT_VERSION_PROPERTY = "_formatVersion";
 	public static final String DOCUMENT_ROUTING_KEY = "_routingKey";
 	public static final String DOCUMENT_INSTANCE_ID_PREFIX = "_instanceId";
+	public static final String DOCUMENT_BUCKET = "_bucket";
+	/**
+	 * The fields of a document that are read by {@link #getRoutingKeyFromDocument(Document)}
+	 */
+	static final Set<String> DOCUMENT_ROUTING_FIELDS = Set.of("_id", DOCUMENT_FORMAT_VERSION_PROPERTY, DOCUMENT_ROUTING_KEY);
 	private final DocumentPatchChain<T> patchChain;
 	private final RoutingKeyExtractor routingKeyExtractor;
 	private final boolean excludeFromInitialLoad;
 	private final boolean writeBackPatchedDocuments;
+	private final boolean deferWriteBackPatchedDocuments;
+	private final Path writeBackSpoolDirectory;
+	private final int deferredWriteBackDocumentsPerSecond;
 	private final boolean loadDocumentsRouted;
+	private final int numVirtualBuckets;
+	private final int numLoadIdRanges;
+	private final boolean readRawDocuments;
+	private final boolean resumableInitialLoad;
+	private final Document loadProjection;
+	private final Path initialLoadSnapshotDirectory;
 	private final boolean persistInstanceId;
 	private final boolean triggerInstanceIdCalculationOnStartup;
 	private final Duration triggerInstanceIdCalculationWithDelay;
 	private final boolean keepPersistent;
     private final String collectionName;
 	private final TemplateFactory customInitialLoadTemplateFactory;
+	private final TemplateFactory hotInitialLoadTemplateFactory;
 	private final ReadPreference readPreference;
+	private final CursorProfile cursorProfile;
 
 	public MirroredObject(MirroredObjectDefinition<T> definition, MirroredObjectDefinitionsOverride override) {
 		this.patchChain = definition.createPatchChain();
 		this.routingKeyExtractor = findRoutingKeyMethod(patchChain.getMirroredType());
 		this.excludeFromInitialLoad = override.excludeFromInitialLoad(definition);
-        this.writeBackPatchedDocuments = override.writeBackPatchedDocuments(definition);
+        // Documents read with excluded fields must never replace the complete documents in persistent storage
+        this.writeBackPatchedDocuments = override.writeBackPatchedDocuments(definition) && definition.excludedLoadFields().isEmpty();
+        DeferredWriteBackDefinition deferredWriteBack = definition.getDeferredWriteBack();
+        this.deferWriteBackPatchedDocuments = writeBackPatchedDocuments && deferredWriteBack.isEnabled();
+        this.writeBackSpoolDirectory = deferredWriteBack.getSpoolDirectory();
+        this.deferredWriteBackDocumentsPerSecond = deferredWriteBack.getDocumentsPerSecond();
         this.loadDocumentsRouted = override.loadDocumentsRouted(definition);
+        this.numVirtualBuckets = definition.numVirtualBuckets();
+        this.numLoadIdRanges = definition.numLoadIdRanges();
+        this.readRawDocuments = definition.readRawDocuments();
+        this.resumableInitialLoad = definition.resumableInitialLoad();
+        Document loadProjection = new Document();
+        definition.excludedLoadFields().forEach(field -> loadProjection.append(field, 0));
+        this.loadProjection = loadProjection;
+        this.initialLoadSnapshotDirectory = definition.initialLoadSnapshotDirectory();
 
 		PersistInstanceIdDefinition persistInstanceId = override.persistInstanceId(definition);
         this.persistInstanceId = persistInstanceId.isEnabled();
@@ -69,7 +100,9 @@ final class MirroredObject<T> {
         this.keepPersistent = definition.keepPersistent();
         this.collectionName = definition.collectionName();
         this.customInitialLoadTemplateFactory = definition.customInitialLoadTemplateFactory();
+        this.hotInitialLoadTemplateFactory = definition.hotInitialLoadTemplateFactory();
         this.readPreference = definition.getReadPreference();
+        this.cursorProfile = definition.getCursorProfile().build();
 	}
 
 	private RoutingKeyExtractor findRoutingKeyMethod(Class<T> mirroredType) {
@@ -122,11 +155,21 @@ final class MirroredObject<T> {
 
 	void setDocumentAttributes(Document document, T spaceObject, InstanceMetadata metadata) {
 		setDocumentVersion(document);
-		if (loadDocumentsRouted || persistInstanceId) {
+		if (loadDocumentsRouted || persistInstanceId || useVirtualBuckets()) {
 			setRoutingKey(document, spaceObject);
 			if (persistInstanceId) {
 				setInstanceIdFields(document, metadata);
 			}
+			if (useVirtualBuckets()) {
+				setBucket(document, spaceObject);
+			}
+		}
+	}
+
+	private void setBucket(Document document, T spaceObject) {
+		Object routingKey = getRoutingKey(spaceObject);
+		if (routingKey != null) {
+			document.put(DOCUMENT_BUCKET, VirtualBuckets.getBucket(routingKey, numVirtualBuckets));
 		}
 	}
 
@@ -211,6 +254,25 @@ final class MirroredObject<T> {
 		return routingKeyExtractor.getRoutingKey(spaceObject);
 	}
 
+	/**
+	 * Returns the routing key of the space object stored in the given document, if it can be determined without
+	 * patching and converting the document. <p>
+	 *
+	 * The routing key is either the hash code stored in the routing key field of the document, which routes to the
+	 * same partition as the actual routing key, or the id of a document on the current version that is routed by
+	 * its space id.
+	 */
+	Optional<Object> getRoutingKeyFromDocument(Document document) {
+		Object routingKeyHashCode = document.get(DOCUMENT_ROUTING_KEY);
+		if (routingKeyHashCode instanceof Integer) {
+			return Optional.of(routingKeyHashCode);
+		}
+		if (getDocumentVersion(document) != getCurrentVersion()) {
+			return Optional.empty();
+		}
+		return routingKeyExtractor.getRoutingKeyFromDocument(document);
+	}
+
 	boolean isKnownVersion(int documentVersion) {
 		return documentVersion >= getOldestKnownVersion() && documentVersion <= getCurrentVersion();
 	}
@@ -223,10 +285,57 @@ final class MirroredObject<T> {
     	return writeBackPatchedDocuments;
     }
 
+	boolean deferWriteBackPatchedDocuments() {
+		return deferWriteBackPatchedDocuments;
+	}
+
+	Path getWriteBackSpoolDirectory() {
+		return writeBackSpoolDirectory;
+	}
+
+	int getDeferredWriteBackDocumentsPerSecond() {
+		return deferredWriteBackDocumentsPerSecond;
+	}
+
 	boolean loadDocumentsRouted() {
 		return loadDocumentsRouted;
 	}
 
+	boolean useVirtualBuckets() {
+		return numVirtualBuckets > 0;
+	}
+
+	int getNumVirtualBuckets() {
+		return numVirtualBuckets;
+	}
+
+	int numLoadIdRanges() {
+		return numLoadIdRanges;
+	}
+
+	boolean readRawDocuments() {
+		return readRawDocuments;
+	}
+
+	boolean resumableInitialLoad() {
+		return resumableInitialLoad;
+	}
+
+	/**
+	 * Returns the projection to apply when reading documents, or an empty document if whole documents are read.
+	 */
+	Document getLoadProjection() {
+		return new Document(loadProjection);
+	}
+
+	boolean useInitialLoadSnapshot() {
+		return initialLoadSnapshotDirectory != null;
+	}
+
+	Path getInitialLoadSnapshotDirectory() {
+		return initialLoadSnapshotDirectory;
+	}
+
 	boolean persistInstanceId() {
 		return persistInstanceId;
 	}
@@ -243,6 +352,10 @@ final class MirroredObject<T> {
 		return readPreference;
 	}
 
+	CursorProfile getCursorProfile() {
+		return cursorProfile;
+	}
+
 	public boolean keepPersistent() {
 		return keepPersistent;
 	}
@@ -254,4 +367,12 @@ final class MirroredObject<T> {
 	public TemplateFactory getCustomInitialLoadTemplateFactory() {
 		return this.customInitialLoadTemplateFactory;
 	}
+
+	public boolean hasHotInitialLoadTemplate() {
+		return this.hotInitialLoadTemplateFactory != null;
+	}
+
+	public TemplateFactory getHotInitialLoadTemplateFactory() {
+		return this.hotInitialLoadTemplateFactory;
+	}
 }
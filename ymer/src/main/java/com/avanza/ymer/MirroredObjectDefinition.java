@@ -15,9 +15,12 @@
  */
 package com.avanza.ymer;
 
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.springframework.data.mongodb.MongoCollectionUtils;
@@ -38,9 +41,18 @@ public final class MirroredObjectDefinition<T> {
 	private boolean excludeFromInitialLoad = false;
 	private boolean writeBackPatchedDocuments = true;
 	private boolean loadDocumentsRouted = false;
+	private int numVirtualBuckets = 0;
+	private int numLoadIdRanges = 1;
+	private boolean readRawDocuments = false;
+	private boolean resumableInitialLoad = false;
+	private Set<String> excludedLoadFields = Set.of();
+	private Path initialLoadSnapshotDirectory;
 	private final PersistInstanceIdDefinition persistInstanceId = new PersistInstanceIdDefinition();
+	private final DeferredWriteBackDefinition deferredWriteBack = new DeferredWriteBackDefinition();
+	private final CursorProfileDefinition cursorProfile = new CursorProfileDefinition();
 	private boolean keepPersistent = false;
 	private TemplateFactory customInitialLoadTemplateFactory;
+	private TemplateFactory hotInitialLoadTemplateFactory;
 	private ReadPreference readPreference;
 
 	public MirroredObjectDefinition(Class<T> mirroredType) {
@@ -101,6 +113,37 @@ public final class MirroredObjectDefinition<T> {
 		return this.writeBackPatchedDocuments;
 	}
 	
+	/**
+	 * Whether to defer writing back patched documents until initial load is complete. Patched documents are then
+	 * spooled to a local file during InitialLoad, and written back to persistent storage at a limited rate afterwards,
+	 * so that writing back does not slow down InitialLoad.
+	 *
+	 * For more properties related to deferred write back, see {@link #deferWriteBackPatchedDocuments(Consumer)}
+	 */
+	public MirroredObjectDefinition<T> deferWriteBackPatchedDocuments(boolean enabled) {
+		deferredWriteBack.enabled(enabled);
+		return this;
+	}
+
+	/**
+	 * Configuration relating to deferred write back of patched documents, see {@link DeferredWriteBackDefinition}.
+	 *
+	 * <pre>{@code
+	 *   .deferWriteBackPatchedDocuments(configurer -> configurer
+	 *       .enabled(true)
+	 *       .documentsPerSecond(500)
+	 *   )
+	 * }</pre>
+	 */
+	public MirroredObjectDefinition<T> deferWriteBackPatchedDocuments(Consumer<DeferredWriteBackDefinition> configurer) {
+		configurer.accept(deferredWriteBack);
+		return this;
+	}
+
+	DeferredWriteBackDefinition getDeferredWriteBack() {
+		return deferredWriteBack;
+	}
+
 	/**
 	 * Adds a routing field to documents that are mirrored to the persistent storage. This field allows objects to be selected with the correct
 	 * routing filtering directly in the persistent storage during initial setupObjectStream, drastically reducing the network setupObjectStream since only the correct
@@ -119,13 +162,172 @@ public final class MirroredObjectDefinition<T> {
 	}
 
 	/**
-	 * Sets the read preference for queries against documents in this collection.
+	 * Adds a routing field and a virtual bucket field to documents that are mirrored to the persistent storage. The
+	 * bucket is derived from the routing key and the given number of buckets only, so it does not change when the
+	 * number of partitions changes. During InitialLoad, each partition selects its documents with an indexed query
+	 * on the buckets routed to it, without any recalculation of persisted fields when the number of partitions
+	 * changes. The index is created by the mirror on startup.<br>
+	 * <br>
+	 * Buckets can only be used when the number of partitions divides the number of buckets. Choose a number of
+	 * buckets divisible by every number of partitions that may be used, for instance 5040. For other numbers of
+	 * partitions, documents are selected like when using {@link #loadDocumentsRouted(boolean)}. Documents that have
+	 * not been written since buckets were enabled are also selected like when using
+	 * {@link #loadDocumentsRouted(boolean)}.<br>
+	 * <br>
+	 * <b>WARNING!</b> Just like {@link #loadDocumentsRouted(boolean)}, don't use virtual buckets if the routing field
+	 * of a space object is changed. The number of buckets must never be changed once documents have been written.
+	 *
+	 * Default value is 0, indicating that no virtual buckets are used.
+	 */
+	public MirroredObjectDefinition<T> loadDocumentsInVirtualBuckets(int numBuckets) {
+		if (numBuckets < 1) {
+			throw new IllegalArgumentException("numBuckets must be a positive integer, was numBuckets=" + numBuckets + "!");
+		}
+		this.numVirtualBuckets = numBuckets;
+		return this;
+	}
+
+	int numVirtualBuckets() {
+		return this.numVirtualBuckets;
+	}
+
+	/**
+	 * Splits the _id space of the collection into the given number of ranges during InitialLoad, based on a sample
+	 * of the collection, and reads the ranges concurrently using one cursor each. Can be used to increase the load
+	 * rate of large collections, which is otherwise limited by a single cursor. Applies to all ways of loading
+	 * documents, i.e. also when loading documents routed or using persisted instance id.<br>
+	 * <br>
+	 * Documents are not loaded in _id order when more than one range is used.
+	 *
+	 * Default value is 1, indicating that the collection is read using a single cursor.
+	 */
+	public MirroredObjectDefinition<T> loadDocumentsInIdRanges(int numRanges) {
+		if (numRanges < 1) {
+			throw new IllegalArgumentException("numRanges must be a positive integer, was numRanges=" + numRanges + "!");
+		}
+		this.numLoadIdRanges = numRanges;
+		return this;
+	}
+
+	int numLoadIdRanges() {
+		return this.numLoadIdRanges;
+	}
+
+	/**
+	 * Reads documents as raw bson during InitialLoad, and only decodes documents that are not already known to belong
+	 * to another partition from their routing key or id. This reduces memory churn during InitialLoad when neither
+	 * {@link #loadDocumentsRouted(boolean)} nor {@link #persistInstanceId(boolean)} is used, since all documents in
+	 * the collection are then read by every partition.<br>
+	 * <br>
+	 * Has no effect when documents are loaded routed or using persisted instance id.
+	 *
+	 * Default value is false.
+	 */
+	public MirroredObjectDefinition<T> readRawDocuments(boolean readRawDocuments) {
+		this.readRawDocuments = readRawDocuments;
+		return this;
+	}
+
+	boolean readRawDocuments() {
+		return this.readRawDocuments;
+	}
+
+	/**
+	 * Reads documents in _id order during InitialLoad, and keeps track of the _id of the last read document, so that
+	 * reading can be resumed after that document when a cursor fails, for instance due to a cursor timeout or a
+	 * primary step down, instead of failing the whole InitialLoad. Each _id range is resumed separately when
+	 * {@link #loadDocumentsInIdRanges(int)} is used. The position of each read is exposed as an mbean.<br>
+	 * <br>
+	 * Sorting on _id makes the database read documents through the _id index, which may be slower than a collection
+	 * scan. Raw bson is never read when the InitialLoad is resumable, see {@link #readRawDocuments(boolean)}.
+	 *
+	 * Default value is false.
+	 */
+	public MirroredObjectDefinition<T> resumableInitialLoad(boolean resumableInitialLoad) {
+		this.resumableInitialLoad = resumableInitialLoad;
+		return this;
+	}
+
+	boolean resumableInitialLoad() {
+		return this.resumableInitialLoad;
+	}
+
+	/**
+	 * Excludes the given fields from documents read from persistent storage, both during InitialLoad and when
+	 * loading objects lazily. Can be used to avoid transferring and decoding large fields that are not mapped by the
+	 * space object type. Excluded fields are not available to patches.<br>
+	 * <br>
+	 * Since read documents are incomplete, patched documents are never written back to persistent storage when
+	 * fields are excluded, see {@link #writeBackPatchedDocuments(boolean)}. Raw bson is never read when fields are
+	 * excluded, see {@link #readRawDocuments(boolean)}.
+	 *
+	 * Default value is no fields, indicating that whole documents are read.
+	 */
+	public MirroredObjectDefinition<T> excludeFieldsFromLoad(String... fields) {
+		Set<String> excludedFields = new LinkedHashSet<>(Arrays.asList(fields));
+		for (String field : excludedFields) {
+			if (MirroredObject.DOCUMENT_ROUTING_FIELDS.contains(field)) {
+				throw new IllegalArgumentException("Field " + field + " is required when loading documents and cannot be excluded");
+			}
+		}
+		this.excludedLoadFields = excludedFields;
+		return this;
+	}
+
+	Set<String> excludedLoadFields() {
+		return this.excludedLoadFields;
+	}
+
+	/**
+	 * Keeps a local snapshot, in the given directory, of the documents loaded by each partition during InitialLoad.
+	 * On the next InitialLoad of the same partition, documents are read from the snapshot, and only documents that
+	 * have been changed since the snapshot was written are read from persistent storage. Changes are found using the
+	 * change stream of the collection, which requires persistent storage to be a replica set. The whole collection is
+	 * read from persistent storage when the snapshot is missing, was written with another document format version or
+	 * number of partitions, or when the changes since the snapshot are no longer available.<br>
+	 * <br>
+	 * Documents are stored in the snapshot as they are read, so patching and conversion still take place on each
+	 * InitialLoad. Has no effect when a custom initial load template is used.
+	 *
+	 * Default value is null, indicating that no snapshot is kept.
+	 */
+	public MirroredObjectDefinition<T> initialLoadSnapshotDirectory(Path initialLoadSnapshotDirectory) {
+		this.initialLoadSnapshotDirectory = Objects.requireNonNull(initialLoadSnapshotDirectory);
+		return this;
+	}
+
+	Path initialLoadSnapshotDirectory() {
+		return this.initialLoadSnapshotDirectory;
+	}
+
+	/**
+	 * Sets the read preference for queries against documents in this collection, both during InitialLoad and when
+	 * loading objects lazily. Overrides the read preference set by {@link YmerFactory#withReadPreference(ReadPreference)}.
 	 */
 	public MirroredObjectDefinition<T> withReadPreference(ReadPreference readPreference) {
 		this.readPreference = Objects.requireNonNull(readPreference);
 		return this;
 	}
 
+	/**
+	 * Configuration of the cursors used when reading documents in this collection, see {@link CursorProfileDefinition}.
+	 *
+	 * <pre>{@code
+	 *   .cursorProfile(configurer -> configurer
+	 *       .batchSize(5_000)
+	 *       .noCursorTimeout(true)
+	 *   )
+	 * }</pre>
+	 */
+	public MirroredObjectDefinition<T> cursorProfile(Consumer<CursorProfileDefinition> configurer) {
+		configurer.accept(cursorProfile);
+		return this;
+	}
+
+	CursorProfileDefinition getCursorProfile() {
+		return cursorProfile;
+	}
+
 	boolean loadDocumentsRouted() {
 		return this.loadDocumentsRouted;
 	}
@@ -198,4 +400,31 @@ public final class MirroredObjectDefinition<T> {
 		return customInitialLoadTemplateFactory;
 	}
 
+	/**
+	 * Loads only the documents matching the created template during InitialLoad, and the remaining documents of the
+	 * partition in the background once InitialLoad is complete. Can be used for collections that are mostly cold
+	 * history, so that the space becomes available before all documents are loaded. Until the background load is
+	 * complete, the remaining objects can be loaded on demand through {@link SpaceObjectLoader}.<br>
+	 * <br>
+	 * Background loading requires a writer for loaded objects, see {@link YmerFactory#setBackgroundLoadWriter}.
+	 * Without a writer, all documents are loaded during InitialLoad. Snapshots are not used for collections that
+	 * are loaded in the background, see {@link #initialLoadSnapshotDirectory(Path)}.<br>
+	 * <br>
+	 * The mirrored type must implement {@link ReloadableSpaceObject}, since objects written to the space by the
+	 * background load would otherwise be written back to the database by the mirror.
+	 *
+	 * Default value is no template, indicating that all documents are loaded during InitialLoad.
+	 */
+	public MirroredObjectDefinition<T> hotInitialLoadTemplateFactory(TemplateFactory templateFactory) {
+		if (!ReloadableSpaceObject.class.isAssignableFrom(mirroredType)) {
+			throw new IllegalArgumentException("Hot initial load requires " + mirroredType.getName() + " to implement " + ReloadableSpaceObject.class.getSimpleName());
+		}
+		this.hotInitialLoadTemplateFactory = Objects.requireNonNull(templateFactory);
+		return this;
+	}
+
+	public TemplateFactory hotInitialLoadTemplateFactory() {
+		return hotInitialLoadTemplateFactory;
+	}
+
 }
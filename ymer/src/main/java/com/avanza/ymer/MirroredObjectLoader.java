@@ -23,17 +23,29 @@ import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
 import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
@@ -42,11 +54,21 @@ import com.avanza.ymer.plugin.PostReadProcessor;
 /**
  * Loads mirrored objects from an external (persistent) source.
  * <p>
- * Implementation note: multithreaded patching to increase throughput.
+ * Implementation note: multithreaded patching to increase throughput, see {@link DocumentLoadPipeline}.
  *
  * @author Elias Lindholm (elilin), Kristoffer Erlandsson, Andreas Skoog
  */
 final class MirroredObjectLoader<T> {
+    private static final int ID_RANGE_QUEUE_CAPACITY = 1_000;
+    static final int ID_BATCH_SIZE = 1_000;
+    private static final int MAX_SNAPSHOT_CHANGES = 100_000;
+    private static final String SNAPSHOT_COLLECTION = "collection";
+    private static final String SNAPSHOT_FORMAT_VERSION = "formatVersion";
+    private static final String SNAPSHOT_INSTANCE_ID = "instanceId";
+    private static final String SNAPSHOT_PARTITION_COUNT = "partitionCount";
+    private static final String SNAPSHOT_POSITION = "position";
+    private static final String SNAPSHOT_PROJECTION = "projection";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final MirroredObject<T> mirroredObject;
@@ -54,8 +76,13 @@ final class MirroredObjectLoader<T> {
     private final SpaceObjectFilter<T> spaceObjectFilter;
     private final DocumentConverter documentConverter;
     private final LongAdder numLoadedObjects = new LongAdder();
+    private final LongAdder numRejectedBeforeConversion = new LongAdder();
     private final MirrorContextProperties contextProperties;
     private final PostReadProcessor postReadProcessor;
+    private final InitialLoadExecutor initialLoadExecutor;
+    private final InitialLoadCheckpoints initialLoadCheckpoints;
+    private final InitialLoadStatistics statistics;
+    private final List<IdCheckpoint> checkpoints = new CopyOnWriteArrayList<>();
 
     MirroredObjectLoader(DocumentCollection documentCollection,
                          DocumentConverter documentConverter,
@@ -63,26 +90,164 @@ final class MirroredObjectLoader<T> {
                          SpaceObjectFilter<T> spaceObjectFilter,
                          MirrorContextProperties contextProperties,
                          PostReadProcessor postReadProcessor) {
+        this(documentCollection, documentConverter, mirroredObject, spaceObjectFilter, contextProperties, postReadProcessor,
+                new InitialLoadExecutor(Runtime.getRuntime().availableProcessors()));
+    }
+
+    MirroredObjectLoader(DocumentCollection documentCollection,
+                         DocumentConverter documentConverter,
+                         MirroredObject<T> mirroredObject,
+                         SpaceObjectFilter<T> spaceObjectFilter,
+                         MirrorContextProperties contextProperties,
+                         PostReadProcessor postReadProcessor,
+                         InitialLoadExecutor initialLoadExecutor) {
+        this(documentCollection, documentConverter, mirroredObject, spaceObjectFilter, contextProperties, postReadProcessor,
+                initialLoadExecutor, new InitialLoadCheckpoints(), new InitialLoadStatistics());
+    }
+
+    MirroredObjectLoader(DocumentCollection documentCollection,
+                         DocumentConverter documentConverter,
+                         MirroredObject<T> mirroredObject,
+                         SpaceObjectFilter<T> spaceObjectFilter,
+                         MirrorContextProperties contextProperties,
+                         PostReadProcessor postReadProcessor,
+                         InitialLoadExecutor initialLoadExecutor,
+                         InitialLoadCheckpoints initialLoadCheckpoints,
+                         InitialLoadStatistics statistics) {
         this.documentConverter = documentConverter;
         this.spaceObjectFilter = spaceObjectFilter;
-        this.documentCollection = documentCollection;
+        this.documentCollection = mirroredObject.getLoadProjection().isEmpty()
+                ? documentCollection
+                : new ProjectedDocumentCollection(documentCollection, mirroredObject.getLoadProjection());
         this.mirroredObject = mirroredObject;
         this.contextProperties = contextProperties;
         this.postReadProcessor = postReadProcessor;
+        this.initialLoadExecutor = initialLoadExecutor;
+        this.initialLoadCheckpoints = initialLoadCheckpoints;
+        this.statistics = statistics;
     }
 
     List<LoadedDocument<T>> loadAllObjects() {
-        return streamAllObjects().collect(toList());
+        try (Stream<LoadedDocument<T>> loadedDocuments = streamAllObjects()) {
+            return loadedDocuments.collect(toList());
+        }
     }
 
     Stream<LoadedDocument<T>> streamAllObjects() {
+        if (readsRawDocuments()) {
+            return processRawDocuments(loadRawDocuments());
+        }
+        return processDocuments(loadDocuments());
+    }
+
+    /**
+     * Loads all objects like {@link #streamAllObjects()}, but reads documents from the given snapshot, and only
+     * the documents that have been changed since the snapshot was written from the database, whenever the snapshot
+     * is usable. A new snapshot is written with all read documents that may belong to this partition, and replaces
+     * the given snapshot once all documents are read.
+     */
+    Stream<LoadedDocument<T>> streamAllObjects(DocumentSnapshot snapshot) {
+        if (mirroredObject.hasCustomInitialLoadTemplate()) {
+            log.warn("Cannot keep snapshot {} for collection {} since it is loaded using a custom initial load template",
+                    snapshot.getFile(), mirroredObject.getCollectionName());
+            return streamAllObjects();
+        }
+        // The position is read before any document, so that no change is missed by the next load
+        Optional<Document> position = documentCollection.getChangeStreamPosition();
+        if (position.isEmpty()) {
+            log.warn("Cannot keep snapshot {} for collection {} since changes to the collection cannot be tracked",
+                    snapshot.getFile(), mirroredObject.getCollectionName());
+            return streamAllObjects();
+        }
+        DocumentSnapshot.Writer snapshotWriter = snapshot.createWriter(createSnapshotHeader(position.get()));
+        Runnable commitSnapshot = () -> {
+            snapshotWriter.commit();
+            log.info("Wrote snapshot {} with {} documents for collection {}", snapshot.getFile(), snapshotWriter.getNumDocuments(), mirroredObject.getCollectionName());
+        };
+        Optional<Stream<Document>> snapshotDocuments = readSnapshotWithChanges(snapshot);
+        Stream<LoadedDocument<T>> loadedDocuments;
+        if (snapshotDocuments.isEmpty() && readsRawDocuments()) {
+            loadedDocuments = processRawDocuments(onEnd(loadRawDocuments().peek(document -> {
+                if (spaceObjectFilter.mayAccept(document.readFields(MirroredObject.DOCUMENT_ROUTING_FIELDS))) {
+                    snapshotWriter.append(document.getBson());
+                }
+            }), commitSnapshot));
+        } else {
+            Stream<Document> documents = snapshotDocuments.orElseGet(this::loadDocuments);
+            loadedDocuments = processDocuments(onEnd(documents.peek(document -> {
+                if (spaceObjectFilter.mayAccept(document)) {
+                    snapshotWriter.append(document);
+                }
+            }), commitSnapshot));
+        }
+        return loadedDocuments.onClose(snapshotWriter::close);
+    }
+
+    private boolean readsRawDocuments() {
+        return mirroredObject.readRawDocuments() && !mirroredObject.loadDocumentsRouted() && !mirroredObject.persistInstanceId()
+                && !mirroredObject.useVirtualBuckets() && !mirroredObject.resumableInitialLoad() && mirroredObject.getLoadProjection().isEmpty();
+    }
+
+    private Stream<LoadedDocument<T>> processRawDocuments(Stream<RawDocument> documents) {
+        // We run patching and conversions on several workers as this is a cpu-intensive task
+        DocumentLoadPipeline<RawDocument, LoadedDocument<T>> pipeline = new DocumentLoadPipeline<>(this::tryDecodePatchAndConvert, initialLoadExecutor, mirroredObject.getCollectionName());
+        return withProgressLogging(pipeline, pipeline.process(timeReads(documents)));
+    }
+
+    private Stream<LoadedDocument<T>> processDocuments(Stream<Document> documents) {
+        DocumentLoadPipeline<Document, LoadedDocument<T>> pipeline = new DocumentLoadPipeline<>(this::tryPatchAndConvert, initialLoadExecutor, mirroredObject.getCollectionName());
+        return withProgressLogging(pipeline, pipeline.process(timeReads(documents)));
+    }
+
+    /**
+     * Counts the documents of the given stream, and the time spent waiting for them.
+     */
+    private <D> Stream<D> timeReads(Stream<D> documents) {
+        Iterator<D> iterator = documents.iterator();
+        Iterator<D> timedIterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                long start = System.nanoTime();
+                try {
+                    return iterator.hasNext();
+                } finally {
+                    statistics.addTime(InitialLoadStatistics.Stage.READ, start);
+                }
+            }
+
+            @Override
+            public D next() {
+                long start = System.nanoTime();
+                try {
+                    D document = iterator.next();
+                    statistics.documentRead();
+                    return document;
+                } finally {
+                    statistics.addTime(InitialLoadStatistics.Stage.READ, start);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(timedIterator, 0), false)
+                .onClose(documents::close);
+    }
+
+    private Stream<LoadedDocument<T>> withProgressLogging(DocumentLoadPipeline<?, ?> pipeline, Stream<LoadedDocument<T>> loadedDocuments) {
         RepeatingTask progressLogger = new RepeatingTask(Duration.ofSeconds(30), () ->
-                log.info("Status: loaded {} records for collection {}", numLoadedObjects.sum(), mirroredObject.getCollectionName()));
+                log.info("Status: loaded {} records for collection {} (rejected before conversion: {}, queued batches: {}, active workers: {}/{}, worker utilization: {}%{})",
+                        numLoadedObjects.sum(), mirroredObject.getCollectionName(), numRejectedBeforeConversion.sum(), pipeline.getQueueDepth(),
+                        pipeline.getActiveWorkers(), initialLoadExecutor.getPoolSize(), Math.round(pipeline.getWorkerUtilization() * 100),
+                        checkpoints.isEmpty() ? "" : ", checkpoints: " + checkpoints));
+        return loadedDocuments.onClose(progressLogger::close);
+    }
 
-        return loadDocuments()
-                .parallel() // We run patching and conversions in parallel as this is a cpu-intensive task
-                .flatMap(document -> tryPatchAndConvert(document).stream())
-                .onClose(progressLogger::close);
+    private Stream<RawDocument> loadRawDocuments() {
+        Document template = mirroredObject.hasCustomInitialLoadTemplate()
+                ? mirroredObject.getCustomInitialLoadTemplateFactory().create(contextProperties.getPartitionCount(), contextProperties.getInstanceId())
+                : new Document();
+        log.info("Begin loading objects for collection {}. Loading raw documents{}.", mirroredObject.getCollectionName(),
+                template.isEmpty() ? "" : " using custom initial load template");
+        return readInIdRanges(() -> documentCollection.findRawByTemplate(template),
+                idRange -> documentCollection.findRawByTemplate(template.isEmpty() ? idRange : new Document("$and", List.of(template, idRange))));
     }
 
     private Stream<Document> loadDocuments() {
@@ -92,7 +257,9 @@ final class MirroredObjectLoader<T> {
                                                            contextProperties.getInstanceId());
             log.info("Begin loading objects for collection {}. Loading using custom initial load template.",
                     mirroredObject.getCollectionName());
-            return documentCollection.findByTemplate(template);
+            return read(template, new Document(),
+                    () -> documentCollection.findByTemplate(template),
+                    idRange -> documentCollection.findByTemplate(new Document("$and", List.of(template, idRange))));
         }
         if (mirroredObject.persistInstanceId()) {
             String instanceIdField = getInstanceIdFieldName(contextProperties.getPartitionCount());
@@ -109,33 +276,238 @@ final class MirroredObjectLoader<T> {
                 query.fields().exclude(DOCUMENT_ROUTING_KEY);
 
                 log.info("Begin loading objects for collection {}. Loading using persistInstanceId.", mirroredObject.getCollectionName());
-                return documentCollection.findByQuery(query);
+                if (mirroredObject.resumableInitialLoad()) {
+                    // Resumable reads are sorted by _id, which the instance id index cannot provide
+                    return read(query.getQueryObject(), query.getFieldsObject(),
+                            () -> documentCollection.findByQuery(query),
+                            idRange -> documentCollection.findByQuery(new BasicQuery(new Document("$and", List.of(query.getQueryObject(), idRange)), query.getFieldsObject())));
+                }
+                String indexName = instanceIdIndices.stream()
+                        .filter(isIndexForNumberOfPartitions(contextProperties.getPartitionCount()))
+                        .findFirst()
+                        .map(IndexInfo::getName)
+                        .orElseThrow();
+                // The $exists: false branch of the query above makes the query planner fall back to a collection scan, so
+                // documents with an instance id and documents without one, which belong to any partition and are filtered
+                // after they are read, are read by separate equality queries on the index. A missing field is indexed as null.
+                return Stream.<Supplier<Stream<Document>>>of(
+                        () -> readUsingIndex(new Document(instanceIdField, contextProperties.getInstanceId()), query.getFieldsObject(), indexName),
+                        () -> readUsingIndex(new Document(instanceIdField, null), query.getFieldsObject(), indexName))
+                        .flatMap(Supplier::get);
             } else {
                 log.warn("Configured to load using persisted instance id for collection {}, but no index exists for field {}. Will not use instance id when loading.",
                         mirroredObject.getCollectionName(), instanceIdField);
             }
         }
-        if (mirroredObject.loadDocumentsRouted()) {
+        if (mirroredObject.useVirtualBuckets()) {
+            Optional<List<Integer>> buckets = VirtualBuckets.getBuckets(mirroredObject.getNumVirtualBuckets(), contextProperties.getInstanceId(), contextProperties.getPartitionCount());
+            if (buckets.isPresent()) {
+                Document filter = VirtualBuckets.createFilter(buckets.get(), MongoPartitionFilter.createDocumentFilter(spaceObjectFilter));
+                log.info("Begin loading objects for collection {}. Loading using {} of {} virtual buckets.",
+                        mirroredObject.getCollectionName(), buckets.get().size(), mirroredObject.getNumVirtualBuckets());
+                return read(filter, new Document(),
+                        () -> documentCollection.findByQuery(new BasicQuery(filter)),
+                        idRange -> documentCollection.findByQuery(new BasicQuery(new Document("$and", List.of(filter, idRange)))));
+            }
+            log.warn("Configured to load using virtual buckets for collection {}, but {} partitions does not divide {} buckets. Will load using routing key.",
+                    mirroredObject.getCollectionName(), contextProperties.getPartitionCount(), mirroredObject.getNumVirtualBuckets());
+        }
+        if (mirroredObject.loadDocumentsRouted() || mirroredObject.useVirtualBuckets()) {
             log.info("Begin loading objects for collection {}. Loading using loadDocumentsRouted.", mirroredObject.getCollectionName());
-            return documentCollection.findAll(spaceObjectFilter);
+            return read(MongoPartitionFilter.createDocumentFilter(spaceObjectFilter), new Document(),
+                    () -> documentCollection.findAll(spaceObjectFilter),
+                    idRange -> documentCollection.findAll(spaceObjectFilter, idRange));
         } else {
             log.info("Begin loading objects for collection {}. Loading ALL documents.", mirroredObject.getCollectionName());
-            return documentCollection.findAll();
+            return read(new Document(), new Document(), documentCollection::findAll, documentCollection::findByTemplate);
+        }
+    }
+
+    /**
+     * Reads documents matching the given filter using a {@link ResumableIdScan} when the initial load is configured
+     * to be resumable, otherwise using the given readers.
+     */
+    private Stream<Document> read(Document filter, Document fields, Supplier<Stream<Document>> reader, Function<Document, Stream<Document>> rangeReader) {
+        if (!mirroredObject.resumableInitialLoad()) {
+            return readInIdRanges(reader, rangeReader);
+        }
+        List<Document> idRanges = mirroredObject.numLoadIdRanges() <= 1
+                ? List.of(new Document())
+                : documentCollection.splitIdRanges(mirroredObject.numLoadIdRanges());
+        if (idRanges.size() <= 1) {
+            return scan(filter, fields, new Document(), mirroredObject.getCollectionName());
+        }
+        log.info("Reading collection {} using {} resumable cursors over _id ranges", mirroredObject.getCollectionName(), idRanges.size());
+        List<Supplier<Stream<Document>>> sources = new ArrayList<>(idRanges.size());
+        for (int i = 0; i < idRanges.size(); i++) {
+            Document idRange = idRanges.get(i);
+            String name = mirroredObject.getCollectionName() + "[" + i + "]";
+            sources.add(() -> scan(filter, fields, idRange, name));
+        }
+        return ConcurrentStreamMerger.merge(sources, sources.size(), ID_RANGE_QUEUE_CAPACITY,
+                "Ymer-Range-Reader-" + mirroredObject.getCollectionName() + "-");
+    }
+
+    private Stream<Document> scan(Document filter, Document fields, Document idRange, String checkpointName) {
+        IdCheckpoint checkpoint = initialLoadCheckpoints.create(checkpointName);
+        checkpoints.add(checkpoint);
+        return ResumableIdScan.scan(idFilter -> {
+            List<Document> filters = Stream.of(filter, idRange, idFilter)
+                    .filter(part -> !part.isEmpty())
+                    .collect(toList());
+            Document query = filters.size() <= 1 ? filters.stream().findFirst().orElseGet(Document::new) : new Document("$and", filters);
+            return documentCollection.findByQuery(new BasicQuery(query, fields).with(Sort.by("_id")));
+        }, checkpoint);
+    }
+
+    /**
+     * Reads the documents matching the given filter using the given index. When the collection is read in _id
+     * ranges, the index is not hinted for the range queries, since it would then be scanned once for each range.
+     */
+    private Stream<Document> readUsingIndex(Document filter, Document fields, String indexName) {
+        Query query = new BasicQuery(filter, fields).withHint(indexName);
+        checkQueryPlan(query);
+        return readInIdRanges(() -> documentCollection.findByQuery(query),
+                idRange -> documentCollection.findByQuery(new BasicQuery(new Document("$and", List.of(filter, idRange)), fields)));
+    }
+
+    /**
+     * Logs the plan that the query planner chooses for the given query, and counts it in the statistics when the
+     * query is executed as a collection scan.
+     */
+    private void checkQueryPlan(Query query) {
+        documentCollection.explain(query).ifPresent(winningPlan -> {
+            if (containsStage(winningPlan, "COLLSCAN")) {
+                statistics.collectionScanPlanned();
+                log.warn("Query {} for collection {} is executed as a collection scan, winning plan is {}",
+                        query.getQueryObject().toJson(), mirroredObject.getCollectionName(), winningPlan.toJson());
+            } else {
+                log.info("Query {} for collection {} uses winning plan {}", query.getQueryObject().toJson(), mirroredObject.getCollectionName(), winningPlan.toJson());
+            }
+        });
+    }
+
+    private static boolean containsStage(Object plan, String stage) {
+        if (plan instanceof Document) {
+            Document document = (Document) plan;
+            return stage.equals(document.get("stage")) || document.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (plan instanceof List) {
+            return ((List<?>) plan).stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+
+    /**
+     * Reads documents using one cursor per _id range when the collection is configured to be loaded in ranges,
+     * otherwise using a single cursor.
+     */
+    private <D> Stream<D> readInIdRanges(Supplier<Stream<D>> reader, Function<Document, Stream<D>> rangeReader) {
+        if (mirroredObject.numLoadIdRanges() <= 1) {
+            return reader.get();
+        }
+        List<Document> idRanges = documentCollection.splitIdRanges(mirroredObject.numLoadIdRanges());
+        if (idRanges.size() <= 1) {
+            return reader.get();
+        }
+        log.info("Reading collection {} using {} concurrent cursors over _id ranges", mirroredObject.getCollectionName(), idRanges.size());
+        List<Supplier<Stream<D>>> sources = idRanges.stream()
+                .<Supplier<Stream<D>>>map(idRange -> () -> rangeReader.apply(idRange))
+                .collect(toList());
+        return ConcurrentStreamMerger.merge(sources, sources.size(), ID_RANGE_QUEUE_CAPACITY,
+                "Ymer-Range-Reader-" + mirroredObject.getCollectionName() + "-");
+    }
+
+    private Document createSnapshotHeader(Document position) {
+        return new Document(SNAPSHOT_COLLECTION, mirroredObject.getCollectionName())
+                .append(SNAPSHOT_FORMAT_VERSION, mirroredObject.getCurrentVersion())
+                .append(SNAPSHOT_INSTANCE_ID, contextProperties.getInstanceId())
+                .append(SNAPSHOT_PARTITION_COUNT, contextProperties.getPartitionCount())
+                .append(SNAPSHOT_PROJECTION, mirroredObject.getLoadProjection())
+                .append(SNAPSHOT_POSITION, position);
+    }
+
+    /**
+     * Reads the documents of the given snapshot that have not been changed since it was written, followed by the
+     * changed documents read from the database. Returns empty if the snapshot cannot be used.
+     */
+    private Optional<Stream<Document>> readSnapshotWithChanges(DocumentSnapshot snapshot) {
+        Optional<Document> header = snapshot.readHeader();
+        if (header.isEmpty()) {
+            log.info("No snapshot {} found for collection {}", snapshot.getFile(), mirroredObject.getCollectionName());
+            return Optional.empty();
+        }
+        Document expectedHeader = createSnapshotHeader(header.get().get(SNAPSHOT_POSITION, Document.class));
+        if (!expectedHeader.equals(header.get())) {
+            log.info("Snapshot {} does not match collection {}, expected {} but was {}", snapshot.getFile(), mirroredObject.getCollectionName(), expectedHeader, header.get());
+            return Optional.empty();
+        }
+        Optional<Set<Object>> changedIds = documentCollection.findIdsChangedSince(header.get().get(SNAPSHOT_POSITION, Document.class), MAX_SNAPSHOT_CHANGES);
+        if (changedIds.isEmpty()) {
+            log.info("Changes to collection {} since snapshot {} was written are not available", mirroredObject.getCollectionName(), snapshot.getFile());
+            return Optional.empty();
         }
+        Set<Object> ids = changedIds.get();
+        log.info("Begin loading objects for collection {}. Loading from snapshot {} and {} changed documents.", mirroredObject.getCollectionName(), snapshot.getFile(), ids.size());
+        Stream<Document> unchangedDocuments = snapshot.readDocuments()
+                .filter(document -> !ids.contains(document.get("_id")));
+        // Read using one query for each batch of ids, like loadByIds, to keep each query well below the size limit
+        List<Object> changedIdList = new ArrayList<>(ids);
+        Stream<Document> changedDocuments = IntStream.iterate(0, start -> start < changedIdList.size(), start -> start + ID_BATCH_SIZE)
+                .mapToObj(start -> changedIdList.subList(start, Math.min(start + ID_BATCH_SIZE, changedIdList.size())))
+                .flatMap(documentCollection::findByIds);
+        return Optional.of(Stream.concat(unchangedDocuments, changedDocuments));
+    }
+
+    /**
+     * Runs the given action when all elements of the given stream have been consumed.
+     */
+    private static <D> Stream<D> onEnd(Stream<D> stream, Runnable action) {
+        return Stream.concat(stream, Stream.of(action).flatMap(endAction -> {
+            endAction.run();
+            return Stream.<D>empty();
+        }));
+    }
+
+    private Optional<LoadedDocument<T>> tryDecodePatchAndConvert(RawDocument document) {
+        statistics.bytesRead(document.getBson().getByteBuffer().remaining());
+        // Only the routing fields are read from documents that belong to other partitions
+        if (!mayAccept(document.readFields(MirroredObject.DOCUMENT_ROUTING_FIELDS))) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Document decoded = document.decode();
+        statistics.addTime(InitialLoadStatistics.Stage.DECODE, start);
+        return tryPatchAndConvertAccepted(decoded);
     }
 
     private Optional<LoadedDocument<T>> tryPatchAndConvert(Document document) {
+        if (!mayAccept(document)) {
+            return Optional.empty();
+        }
+        return tryPatchAndConvertAccepted(document);
+    }
+
+    /**
+     * Documents belonging to other partitions are discarded before the expensive patching and conversion
+     * whenever the routing key can be read directly from the document
+     */
+    private boolean mayAccept(Document document) {
+        long start = System.nanoTime();
+        boolean mayAccept = spaceObjectFilter.mayAccept(document);
+        statistics.addTime(InitialLoadStatistics.Stage.FILTER, start);
+        if (mayAccept) {
+            return true;
+        }
+        statistics.documentRejected();
+        numRejectedBeforeConversion.increment();
+        numLoadedObjects.increment();
+        return false;
+    }
+
+    private Optional<LoadedDocument<T>> tryPatchAndConvertAccepted(Document document) {
         try {
-            Optional<LoadedDocument<T>> result;
-            try {
-                result = patchAndConvert(new Document(document));
-            } catch (RuntimeException e) {
-                // MongoConverter is not thread-safe due to a bug in AbstractMappingContext.addPersistentEntity().
-                // The bug occurs at most once or twice per collection but will produce objects without any properties set
-                // Resolve it temporarily by retrying.
-                log.warn("Failed to load dbObject={}. Retrying.", document, e);
-                result = patchAndConvert(new Document(document));
-            }
+            Optional<LoadedDocument<T>> result = patchAndConvert(document, this::convertWithRetry);
             numLoadedObjects.increment();
 
             return result;
@@ -145,55 +517,105 @@ final class MirroredObjectLoader<T> {
         }
     }
 
+    private T convertWithRetry(Document document) {
+        try {
+            return convert(document);
+        } catch (RuntimeException e) {
+            // MongoConverter is not thread-safe due to a bug in AbstractMappingContext.addPersistentEntity().
+            // The bug occurs at most once or twice per collection but will produce objects without any properties set
+            // Resolve it temporarily by retrying.
+            log.warn("Failed to load dbObject={}. Retrying.", document, e);
+            return convert(document);
+        }
+    }
+
+    private T convert(Document document) {
+        return documentConverter.convert(mirroredObject.getMirroredType(), document);
+    }
+
     Optional<LoadedDocument<T>> loadById(Object id) {
-        Document document = findById(id);
+        final Object convertedId = documentConverter.convertToMongoObject(id);
+        final Document document = documentCollection.findById(convertedId);
         if (document == null) {
             return Optional.empty();
         }
         // TODO: Why throw when spaceObjectFilter rejects but not when not found by findById???
-        LoadedDocument<T> result = patchAndConvert(document).orElseThrow(() -> new IllegalArgumentException("Space object not accepted by filter (id=" + id + ")"));
+        LoadedDocument<T> result = patchAndConvert(document, this::convert).orElseThrow(() -> new IllegalArgumentException("Space object not accepted by filter (id=" + id + ")"));
         return Optional.of(result);
     }
 
-    List<LoadedDocument<T>> loadByQuery(T template) {
-        return documentCollection.findByQuery(documentConverter.toQuery(template))
-                .flatMap(document -> patchAndConvert(document).stream())
+    /**
+     * Loads the documents with the given ids, using one query for each batch of {@value #ID_BATCH_SIZE} ids. Ids that
+     * are not found, or that belong to another partition, are left out of the result.
+     */
+    List<LoadedDocument<T>> loadByIds(Collection<?> ids) {
+        List<Object> convertedIds = ids.stream()
+                .map(documentConverter::convertToMongoObject)
                 .collect(toList());
+        List<LoadedDocument<T>> result = new ArrayList<>(convertedIds.size());
+        for (int start = 0; start < convertedIds.size(); start += ID_BATCH_SIZE) {
+            List<Object> batch = convertedIds.subList(start, Math.min(start + ID_BATCH_SIZE, convertedIds.size()));
+            try (Stream<Document> documents = documentCollection.findByIds(batch)) {
+                documents.forEach(document -> patchAndConvert(document, this::convert).ifPresent(result::add));
+            }
+        }
+        return result;
     }
 
-    private Document findById(Object id) {
-        final Object convertedId = documentConverter.convertToMongoObject(id);
-        final Document document = documentCollection.findById(convertedId);
-        return document != null ? new Document(document) : null;
+    List<LoadedDocument<T>> loadByQuery(T template) {
+        return documentCollection.findByQuery(documentConverter.toQuery(template))
+                .flatMap(document -> patchAndConvert(document, this::convert).stream())
+                .collect(toList());
     }
 
-    private Optional<LoadedDocument<T>> patchAndConvert(Document document) {
+    /**
+     * Patches and converts the given document, which is mutated unless the unpatched version has to be kept for
+     * writing the patched document back.
+     */
+    private Optional<LoadedDocument<T>> patchAndConvert(Document document, Function<Document, T> converter) {
         Document currentVersion = document;
         boolean patched = false;
         if (this.mirroredObject.requiresPatching(document)) {
             patched = true;
             try {
-                currentVersion = new Document(document);
-                postReadProcessor.postRead(currentVersion);
+                if (this.mirroredObject.writeBackPatchedDocuments()) {
+                    currentVersion = new Document(document);
+                }
+                postRead(currentVersion);
+                long start = System.nanoTime();
                 currentVersion = this.mirroredObject.patch(currentVersion);
+                statistics.addTime(InitialLoadStatistics.Stage.PATCH, start);
+                statistics.documentPatched();
             } catch (RuntimeException e) {
                 log.error("Patch of document failed! document={}currentVersion={}", mirroredObject, currentVersion, e);
                 throw e;
             }
         } else {
-            postReadProcessor.postRead(currentVersion);
+            postRead(currentVersion);
         }
-        T mirroredObject = documentConverter.convert(this.mirroredObject.getMirroredType(), currentVersion);
-        if (!spaceObjectFilter.accept(mirroredObject)) {
+        long start = System.nanoTime();
+        T mirroredObject = converter.apply(currentVersion);
+        statistics.addTime(InitialLoadStatistics.Stage.CONVERT, start);
+        start = System.nanoTime();
+        boolean accepted = spaceObjectFilter.accept(mirroredObject);
+        statistics.addTime(InitialLoadStatistics.Stage.FILTER, start);
+        if (!accepted) {
+            statistics.documentRejected();
             return Optional.empty();
         }
-        if (patched) {
+        if (patched && this.mirroredObject.writeBackPatchedDocuments()) {
             return Optional.of(new LoadedDocument<>(postProcess(mirroredObject), new PatchedDocument(document, currentVersion)));
         } else {
             return Optional.of(new LoadedDocument<>(postProcess(mirroredObject), null));
         }
     }
 
+    private void postRead(Document document) {
+        long start = System.nanoTime();
+        postReadProcessor.postRead(document);
+        statistics.addTime(InitialLoadStatistics.Stage.POST_READ, start);
+    }
+
     private T postProcess(T mirroredObject) {
         if (mirroredObject instanceof ReloadableSpaceObject) {
             ReloadableSpaceObjectUtil.markReloaded((ReloadableSpaceObject) mirroredObject);
@@ -16,13 +16,19 @@
 package com.avanza.ymer;
 
 import static com.mongodb.ErrorCategory.DUPLICATE_KEY;
+import static java.util.Collections.singletonList;
 import static java.util.Spliterators.spliteratorUnknownSize;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -30,19 +36,29 @@ import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.data.mongodb.core.query.Query;
 
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoException;
 import com.mongodb.MongoWriteException;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
@@ -50,9 +66,12 @@ import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -62,9 +81,14 @@ import com.mongodb.client.result.UpdateResult;
  *
  */
 final class MongoDocumentCollection implements DocumentCollection {
+	private static final int ID_SAMPLES_PER_RANGE = 100;
+	private static final Set<String> NUMBER_TYPES = Set.of("int", "long", "double", "decimal");
+	private static final Duration MAX_CHANGE_STREAM_READ_TIME = Duration.ofMinutes(1);
+
 	private final Logger log = LoggerFactory.getLogger(getClass());
 	private final MongoCollection<Document> collection;
 	private final IdValidator idValidator;
+	private final CursorProfile cursorProfile;
 
 	interface IdValidator {
 		void validateHasIdField(String operation, Document obj);
@@ -76,49 +100,231 @@ final class MongoDocumentCollection implements DocumentCollection {
 		this(collection, new IdValidatorImpl(collection.getNamespace().getCollectionName()));
 	}
 
+	MongoDocumentCollection(MongoCollection<Document> collection, CursorProfile cursorProfile) {
+		this(collection, new IdValidatorImpl(collection.getNamespace().getCollectionName()), cursorProfile);
+	}
+
 	MongoDocumentCollection(MongoCollection<Document> collection, IdValidator idValidator) {
+		this(collection, idValidator, CursorProfile.DEFAULT);
+	}
+
+	MongoDocumentCollection(MongoCollection<Document> collection, IdValidator idValidator, CursorProfile cursorProfile) {
 		this.collection = Objects.requireNonNull(collection);
 		this.idValidator = Objects.requireNonNull(idValidator);
+		this.cursorProfile = Objects.requireNonNull(cursorProfile);
 	}
 
 	@Override
 	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter) {
 		if (MongoPartitionFilter.canCreateFrom(objectFilter)) {
 			MongoPartitionFilter mongoPartitionFilter = MongoPartitionFilter.createBsonFilter(objectFilter);
-			return toStream(collection.find(mongoPartitionFilter.toBson()));
+			return toStream(find(mongoPartitionFilter.toBson()));
 		}
 		return findAll();
 	}
 
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter, Document idRange) {
+		if (MongoPartitionFilter.canCreateFrom(objectFilter)) {
+			MongoPartitionFilter mongoPartitionFilter = MongoPartitionFilter.createBsonFilter(objectFilter);
+			return toStream(find(Filters.and(mongoPartitionFilter.toBson(), idRange)));
+		}
+		return toStream(find(idRange));
+	}
+
+	@Override
+	public List<Document> splitIdRanges(int numRanges) {
+		if (numRanges < 2) {
+			return singletonList(new Document());
+		}
+		int sampleSize = numRanges * ID_SAMPLES_PER_RANGE;
+		Optional<String> idType = Optional.ofNullable(collection.aggregate(Arrays.asList(
+				Aggregates.sample(sampleSize),
+				Aggregates.group(new Document("$type", "$_id"), Accumulators.sum("count", 1)),
+				Aggregates.sort(Sorts.descending("count"))
+		)).map(group -> group.getString("_id")).first())
+				.map(type -> NUMBER_TYPES.contains(type) ? "number" : type);
+		if (idType.isEmpty()) {
+			return singletonList(new Document());
+		}
+
+		// Comparison operators only match values of the same type as the boundary, so boundaries are computed for
+		// the most common _id type and documents with an _id of any other type are read by a separate range
+		List<Object> boundaries = collection.aggregate(Arrays.asList(
+				Aggregates.sample(sampleSize),
+				Aggregates.match(Filters.type("_id", idType.get())),
+				Aggregates.bucketAuto("$_id", numRanges)
+		)).map(bucket -> bucket.get("_id", Document.class).get("min"))
+				.into(new ArrayList<>());
+		if (boundaries.size() < 2) {
+			log.info("Could not split collection {} into _id ranges", collection.getNamespace().getCollectionName());
+			return singletonList(new Document());
+		}
+		boundaries.remove(0);
+
+		List<Document> ranges = new ArrayList<>();
+		ranges.add(new Document("_id", new Document("$lt", boundaries.get(0))));
+		for (int i = 1; i < boundaries.size(); i++) {
+			ranges.add(new Document("_id", new Document("$gte", boundaries.get(i - 1)).append("$lt", boundaries.get(i))));
+		}
+		ranges.add(new Document("_id", new Document("$gte", boundaries.get(boundaries.size() - 1))));
+		ranges.add(new Document("_id", new Document("$not", new Document("$type", idType.get()))));
+		return ranges;
+	}
+
 	@Override
 	public Stream<Document> findAll() {
-		return toStream(collection.find());
+		return toStream(cursorProfile.applyTo(collection.find()));
 	}
 
 
 	@Override
 	public Document findById(Object id) {
-		return collection.find(Filters.eq(id)).first();
+		return find(Filters.eq(id)).first();
 	}
 
 	@Override
 	public Stream<Document> findByQuery(Query query) {
-		FindIterable<Document> iterable = collection.find(query.getQueryObject());
+		return toStream(find(query));
+	}
+
+	@Override
+	public Optional<Document> explain(Query query) {
+		try {
+			Document explanation = find(query).explain(ExplainVerbosity.QUERY_PLANNER);
+			return Optional.ofNullable(explanation.get("queryPlanner", Document.class))
+					.map(queryPlanner -> queryPlanner.get("winningPlan", Document.class));
+		} catch (MongoException e) {
+			log.warn("Could not explain query {} for collection {}", query.getQueryObject(), collection.getNamespace(), e);
+			return Optional.empty();
+		}
+	}
+
+	private FindIterable<Document> find(Query query) {
+		FindIterable<Document> iterable = find(query.getQueryObject());
 		Document fieldsObject = query.getFieldsObject();
 		if (!fieldsObject.isEmpty()) {
 			iterable = iterable.projection(fieldsObject);
 		}
+		Document sortObject = query.getSortObject();
+		if (!sortObject.isEmpty()) {
+			iterable = iterable.sort(sortObject);
+		}
 		Integer batchSize = query.getMeta().getCursorBatchSize();
 		if (batchSize != null) {
 			iterable = iterable.batchSize(batchSize);
 		}
-
-		return toStream(iterable);
+		String hint = query.getHint();
+		if (hint != null) {
+			// A hint is either the name of an index or the keys of an index
+			iterable = hint.startsWith("{") ? iterable.hint(Document.parse(hint)) : iterable.hintString(hint);
+		}
+		return iterable;
 	}
 
 	@Override
 	public Stream<Document> findByTemplate(Document template) {
-		return toStream(collection.find(template));
+		return toStream(find(template));
+	}
+
+	@Override
+	public Stream<RawDocument> findRawByTemplate(Document template) {
+		Decoder<Document> decoder = collection.getCodecRegistry().get(Document.class);
+		return toStream(cursorProfile.applyTo(collection.withDocumentClass(RawBsonDocument.class).find(template))
+				.map(bson -> new RawDocument(bson, decoder)));
+	}
+
+	@Override
+	public Stream<Document> findByIds(Collection<Object> ids) {
+		return toStream(find(Filters.in("_id", ids)));
+	}
+
+	@Override
+	public OptionalLong getDataSize() {
+		try {
+			// A sharded collection has statistics for each shard
+			List<Document> storageStats = collection.aggregate(singletonList(new Document("$collStats", new Document("storageStats", new Document()))))
+					.map(stats -> stats.get("storageStats", Document.class))
+					.into(new ArrayList<>());
+			if (storageStats.isEmpty()) {
+				return OptionalLong.empty();
+			}
+			return OptionalLong.of(storageStats.stream()
+					.mapToLong(stats -> stats.get("size", Number.class).longValue())
+					.sum());
+		} catch (MongoException e) {
+			log.warn("Could not read statistics of collection {}", collection.getNamespace(), e);
+			return OptionalLong.empty();
+		}
+	}
+
+	@Override
+	public Optional<Document> getChangeStreamPosition() {
+		try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = collection.watch().cursor()) {
+			return Optional.ofNullable(cursor.getResumeToken())
+					.map(this::toDocument);
+		} catch (MongoException e) {
+			log.warn("Change stream is not available for collection {}", collection.getNamespace(), e);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public Optional<Set<Object>> findIdsChangedSince(Document position, int maxChanges) {
+		// tryNext returns null as soon as a batch is empty, which is not the end of the changes made until now.
+		// The changes are therefore read until the change stream has passed its current position.
+		String endPosition = getChangeStreamPosition()
+				.map(MongoDocumentCollection::getResumeTokenData)
+				.orElse(null);
+		if (endPosition == null) {
+			return Optional.empty();
+		}
+		Set<Object> ids = new HashSet<>();
+		BsonDocument resumeToken = position.toBsonDocument(BsonDocument.class, collection.getCodecRegistry());
+		long deadline = System.nanoTime() + MAX_CHANGE_STREAM_READ_TIME.toNanos();
+		try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = collection.watch().resumeAfter(resumeToken).cursor()) {
+			while (!hasReached(cursor.getResumeToken(), endPosition)) {
+				if (System.nanoTime() > deadline) {
+					log.warn("Could not read changes of collection {} up to the current position within {}", collection.getNamespace(), MAX_CHANGE_STREAM_READ_TIME);
+					return Optional.empty();
+				}
+				ChangeStreamDocument<Document> change = cursor.tryNext();
+				if (change == null) {
+					continue;
+				}
+				if (change.getDocumentKey() == null) {
+					log.info("Collection {} was changed by a {} operation", collection.getNamespace(), change.getOperationType());
+					return Optional.empty();
+				}
+				ids.add(toDocument(change.getDocumentKey()).get("_id"));
+				if (ids.size() > maxChanges) {
+					return Optional.empty();
+				}
+			}
+			return Optional.of(ids);
+		} catch (MongoException e) {
+			log.warn("Could not read changes of collection {} from change stream", collection.getNamespace(), e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Resume tokens of a change stream are ordered by their hex encoded data, which starts with the cluster time of
+	 * the change.
+	 */
+	private static boolean hasReached(@Nullable BsonDocument resumeToken, String position) {
+		return resumeToken != null
+				&& resumeToken.isString("_data")
+				&& resumeToken.getString("_data").getValue().compareTo(position) >= 0;
+	}
+
+	@Nullable
+	private static String getResumeTokenData(Document resumeToken) {
+		return resumeToken.get("_data") instanceof String ? resumeToken.getString("_data") : null;
+	}
+
+	private Document toDocument(BsonDocument bson) {
+		return collection.getCodecRegistry().get(Document.class).decode(new BsonDocumentReader(bson), DecoderContext.builder().build());
 	}
 
 	@Override
@@ -169,6 +375,23 @@ final class MongoDocumentCollection implements DocumentCollection {
 						new ReplaceOptions().upsert(true)));
 			}
 
+			@Override
+			public void replaceExisting(Document newVersion) {
+				idValidator.validateHasIdField("replace", newVersion);
+				writeModels.add(new ReplaceOneModel<>(Filters.eq(newVersion.get("_id")), newVersion));
+			}
+
+			@Override
+			public void replaceIfFormatVersion(Document newVersion, int formatVersion) {
+				idValidator.validateHasIdField("replace", newVersion);
+				Bson formatVersionFilter = Filters.eq(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, formatVersion);
+				if (formatVersion == 1) {
+					formatVersionFilter = Filters.or(formatVersionFilter, Filters.exists(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, false));
+				}
+				writeModels.add(new ReplaceOneModel<>(Filters.and(Filters.eq(newVersion.get("_id")), formatVersionFilter),
+						newVersion));
+			}
+
 			@Override
 			public void delete(Document document) {
 				idValidator.validateHasIdField("delete", document);
@@ -198,6 +421,15 @@ final class MongoDocumentCollection implements DocumentCollection {
 				Bson updates = toFieldDeletes(fieldsToUnset);
 				addUpdates(ids, updates);
 			}
+
+			@Override
+			public void updateFields(Object id, Map<String, Object> fieldsToSet, Set<String> fieldsToUnset) {
+				Bson updates = Stream.of(toUpdates(fieldsToSet), toFieldDeletes(fieldsToUnset))
+						.filter(Objects::nonNull)
+						.reduce(Updates::combine)
+						.orElseThrow(() -> new IllegalArgumentException("No fields to update provided for id " + id));
+				writeModels.add(new UpdateOneModel<>(Filters.eq(id), updates));
+			}
 		});
 		return collection.bulkWrite(writeModels, new BulkWriteOptions().ordered(ordered));
 	}
@@ -262,6 +494,10 @@ final class MongoDocumentCollection implements DocumentCollection {
 				.orElse(null);
 	}
 
+	private FindIterable<Document> find(Bson filter) {
+		return cursorProfile.applyTo(collection.find(filter));
+	}
+
 	private static <T> Stream<T> toStream(MongoIterable<T> mongoIterable) {
 		MongoCursor<T> iterator = mongoIterable.iterator();
 		return StreamSupport.stream(spliteratorUnknownSize(iterator, 0), false)
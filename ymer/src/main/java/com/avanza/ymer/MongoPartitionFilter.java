@@ -18,6 +18,7 @@ package com.avanza.ymer;
 import java.util.Arrays;
 import java.util.Objects;
 
+import org.bson.Document;
 import org.bson.conversions.Bson;
 import com.avanza.ymer.SpaceObjectFilter.PartitionFilter;
 import com.mongodb.BasicDBObject;
@@ -39,6 +40,16 @@ class MongoPartitionFilter {
 		return new MongoPartitionFilter(buildBsonFilter(spaceObjectFilter.getPartitionFilter()));
 	}
 
+	/**
+	 * Returns the partition filter as a query document, or an empty document when the given filter has no partition filter.
+	 */
+	public static Document createDocumentFilter(SpaceObjectFilter<?> spaceObjectFilter) {
+		if (!canCreateFrom(spaceObjectFilter)) {
+			return new Document();
+		}
+		return new Document(buildFilter(spaceObjectFilter.getPartitionFilter()));
+	}
+
 	public static boolean canCreateFrom(SpaceObjectFilter<?> spaceObjectFilter) {
 		return spaceObjectFilter.hasPartitionFilter();
 	}
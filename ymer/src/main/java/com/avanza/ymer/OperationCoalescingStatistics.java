@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class OperationCoalescingStatistics implements OperationCoalescingStatisticsMBean {
+
+	private final LongAdder numReceivedOperations = new LongAdder();
+	private final LongAdder numCoalescedOperations = new LongAdder();
+
+	void add(int receivedOperations, int coalescedOperations) {
+		numReceivedOperations.add(receivedOperations);
+		numCoalescedOperations.add(coalescedOperations);
+	}
+
+	@Override
+	public long getNumReceivedOperations() {
+		return numReceivedOperations.sum();
+	}
+
+	@Override
+	public long getNumCoalescedOperations() {
+		return numCoalescedOperations.sum();
+	}
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+public interface OperationCoalescingStatisticsMBean {
+
+	/**
+	 * Gets the number of operations received from the space for the collection
+	 */
+	long getNumReceivedOperations();
+
+	/**
+	 * Gets the number of received operations that were never written to mongo, since they were coalesced with
+	 * other operations on the same space id in the same batch
+	 */
+	long getNumCoalescedOperations();
+}
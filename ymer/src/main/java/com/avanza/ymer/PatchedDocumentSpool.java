@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.MongoClientSettings;
+
+/**
+ * A local file of patched documents that are to be written back to the database. <p>
+ *
+ * Each entry is stored as a bson document holding the patched document along with the id and format version of
+ * the document it was patched from, see {@link #createEntry(PatchedDocument)}. The patched document is expected to
+ * already have been through pre-write processing, so that nothing is stored that is not stored in the database, for
+ * instance decrypted fields. Entries are appended to the end
+ * of the file, so a spool that is left behind, for instance by a restart, can be appended to and read again.
+ */
+final class PatchedDocumentSpool implements AutoCloseable {
+
+	static final String ID = "_id";
+	static final String FORMAT_VERSION = "formatVersion";
+	static final String DOCUMENT = "document";
+
+	private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+	private final Path file;
+	private OutputStream out;
+	private long numAppendedEntries = 0;
+
+	PatchedDocumentSpool(Path file) {
+		this.file = Objects.requireNonNull(file);
+	}
+
+	/**
+	 * Creates a spool entry for the given patched document, holding the id and format version of the document
+	 * before it was patched together with the patched document.
+	 */
+	static Document createEntry(PatchedDocument patchedDocument) {
+		Document oldVersion = patchedDocument.getOldVersion();
+		return new Document(ID, oldVersion.get("_id"))
+				.append(FORMAT_VERSION, oldVersion.getInteger(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, 1))
+				.append(DOCUMENT, patchedDocument.getNewVersion());
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	boolean exists() {
+		return Files.exists(file);
+	}
+
+	/**
+	 * Appends an entry for the given patched document to the end of the spool. An entry that was only partially
+	 * written to an existing spool, for instance when the process was killed, is discarded before the first entry
+	 * is appended.
+	 */
+	void append(PatchedDocument patchedDocument) {
+		try {
+			if (out == null) {
+				out = openForAppend();
+			}
+			BasicOutputBuffer buffer = new BasicOutputBuffer();
+			CODEC.encode(new BsonBinaryWriter(buffer), createEntry(patchedDocument), EncoderContext.builder().build());
+			buffer.pipe(out);
+			numAppendedEntries++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to append patched document to " + file, e);
+		}
+	}
+
+	long getNumAppendedEntries() {
+		return numAppendedEntries;
+	}
+
+	private OutputStream openForAppend() throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		long validLength = Files.exists(file) ? readEntries(file, entry -> { }) : 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.truncate(validLength);
+		}
+		return new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND));
+	}
+
+	/**
+	 * Flushes and closes the spool for appending.
+	 */
+	@Override
+	public void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to close " + file, e);
+		} finally {
+			out = null;
+		}
+	}
+
+	/**
+	 * Reads all complete entries in the spool, in the order they were appended, and passes them to the given
+	 * consumer in batches of at most the given size.
+	 */
+	void readEntries(int batchSize, Consumer<List<Document>> consumer) {
+		if (!exists()) {
+			return;
+		}
+		List<Document> batch = new ArrayList<>(batchSize);
+		try {
+			readEntries(file, entry -> {
+				batch.add(entry);
+				if (batch.size() == batchSize) {
+					consumer.accept(batch);
+					batch.clear();
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read " + file, e);
+		}
+		if (!batch.isEmpty()) {
+			consumer.accept(batch);
+		}
+	}
+
+	/**
+	 * Deletes the spool file, if it exists.
+	 */
+	void delete() {
+		close();
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to delete " + file, e);
+		}
+	}
+
+	/**
+	 * Reads all complete entries of the given file and returns the length of the file up to the end of the
+	 * last complete entry.
+	 */
+	private static long readEntries(Path file, Consumer<Document> consumer) throws IOException {
+		long validLength = 0;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			while (true) {
+				byte[] entry = readEntry(in);
+				if (entry == null) {
+					return validLength;
+				}
+				consumer.accept(new RawBsonDocument(entry).decode(CODEC));
+				validLength += entry.length;
+			}
+		}
+	}
+
+	private static byte[] readEntry(InputStream in) throws IOException {
+		byte[] lengthBytes = new byte[4];
+		int read = in.readNBytes(lengthBytes, 0, 4);
+		if (read < 4) {
+			return null;
+		}
+		// Bson documents start with their total length as a little endian int32
+		int length = (lengthBytes[0] & 0xff) | (lengthBytes[1] & 0xff) << 8 | (lengthBytes[2] & 0xff) << 16 | (lengthBytes[3] & 0xff) << 24;
+		if (length < 5) {
+			return null;
+		}
+		byte[] entry = new byte[length];
+		System.arraycopy(lengthBytes, 0, entry, 0, 4);
+		if (in.readNBytes(entry, 4, length - 4) < length - 4) {
+			return null;
+		}
+		return entry;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.avanza.ymer.plugin.PreWriteProcessor;
+import com.mongodb.bulk.BulkWriteResult;
+
+/**
+ * Writes patched documents back to the database on a background thread during initial load. <p>
+ *
+ * Documents are handed over through a bounded queue, so loading blocks when the database falls behind, and are
+ * written in non-ordered bulk writes. A failure to write is rethrown on the next call to {@link #write(PatchedDocument)}
+ * or {@link #awaitCompletion()}.
+ */
+final class PatchedDocumentWriteBack {
+
+	static final int BATCH_SIZE = 500;
+	static final int QUEUE_CAPACITY = 10_000;
+
+	private static final Object END_OF_INPUT = new Object();
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final DocumentCollection documentCollection;
+	private final PreWriteProcessor preWriteProcessor;
+	private final String collectionName;
+	private final BlockingQueue<Object> queue;
+	private final ExecutorService writer;
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+	private final LongAdder numWrittenDocuments = new LongAdder();
+	private final LongAdder numMissingDocuments = new LongAdder();
+	private final int batchSize;
+	private boolean inputComplete = false;
+
+	PatchedDocumentWriteBack(DocumentCollection documentCollection, PreWriteProcessor preWriteProcessor, String collectionName) {
+		this(documentCollection, preWriteProcessor, collectionName, BATCH_SIZE, QUEUE_CAPACITY);
+	}
+
+	PatchedDocumentWriteBack(DocumentCollection documentCollection, PreWriteProcessor preWriteProcessor, String collectionName, int batchSize, int queueCapacity) {
+		this.documentCollection = Objects.requireNonNull(documentCollection);
+		this.preWriteProcessor = Objects.requireNonNull(preWriteProcessor);
+		this.collectionName = Objects.requireNonNull(collectionName);
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Ymer-Write-Back-" + collectionName + "-");
+		threadFactory.setDaemon(true);
+		this.writer = Executors.newSingleThreadExecutor(threadFactory);
+		this.writer.execute(this::writeAll);
+		this.writer.shutdown();
+	}
+
+	/**
+	 * Queues the given document for write-back, blocks while the queue is full.
+	 */
+	void write(PatchedDocument patchedDocument) {
+		rethrowFailure();
+		put(patchedDocument);
+	}
+
+	/**
+	 * Signals that no more documents will be written. Documents that are already queued are still written.
+	 */
+	synchronized void complete() {
+		if (!inputComplete) {
+			inputComplete = true;
+			put(END_OF_INPUT);
+		}
+	}
+
+	/**
+	 * Waits until all queued documents are written to the database.
+	 */
+	void awaitCompletion() {
+		complete();
+		try {
+			while (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+				log.info("Waiting for write-back of patched documents to {}, {} documents written, {} queued",
+						collectionName, numWrittenDocuments.sum(), queue.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for write-back of patched documents to " + collectionName, e);
+		}
+		rethrowFailure();
+	}
+
+	long getNumWrittenDocuments() {
+		return numWrittenDocuments.sum();
+	}
+
+	long getNumMissingDocuments() {
+		return numMissingDocuments.sum();
+	}
+
+	private void put(Object element) {
+		try {
+			queue.put(element);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing patched document for write-back to " + collectionName, e);
+		}
+	}
+
+	private void rethrowFailure() {
+		RuntimeException e = failure.get();
+		if (e != null) {
+			throw new IllegalStateException("Failed to write back patched documents to " + collectionName, e);
+		}
+	}
+
+	private void writeAll() {
+		List<Object> batch = new ArrayList<>(batchSize);
+		try {
+			boolean endOfInput = false;
+			while (!endOfInput) {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+				// END_OF_INPUT is the last element ever queued
+				endOfInput = batch.get(batch.size() - 1) == END_OF_INPUT;
+				if (endOfInput) {
+					batch.remove(batch.size() - 1);
+				}
+				if (!batch.isEmpty() && failure.get() == null) {
+					writeBatch(batch);
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Adds the new version of the given patched document to the given bulk write, and removes the old version when its
+	 * id is changed by the patch. A document that has been removed from the database since it was loaded, for instance
+	 * by the mirror, is not written back, unless its id is changed by the patch.
+	 */
+	static void write(DocumentCollection.BulkWriter bulkWriter, PreWriteProcessor preWriteProcessor, PatchedDocument patchedDocument) {
+		Document newVersion = preWriteProcessor.preWrite(patchedDocument.getNewVersion());
+		if (Objects.equals(patchedDocument.getOldVersion().get("_id"), newVersion.get("_id"))) {
+			bulkWriter.replaceExisting(newVersion);
+		} else {
+			bulkWriter.replace(newVersion);
+			bulkWriter.delete(new Document("_id", patchedDocument.getOldVersion().get("_id")));
+		}
+	}
+
+	/**
+	 * Returns how many of the given number of patched documents, written by {@link #write}, were not written back as
+	 * they were no longer in the database.
+	 */
+	static int getNumMissingDocuments(BulkWriteResult result, int numPatchedDocuments) {
+		if (!result.wasAcknowledged()) {
+			// No way to validate when using WriteConcern.UNACKNOWLEDGED
+			return 0;
+		}
+		// each patched document is written by a single replace, which either matches, upserts or writes nothing
+		return numPatchedDocuments - result.getMatchedCount() - result.getUpserts().size();
+	}
+
+	private void writeBatch(List<Object> batch) {
+		try {
+			BulkWriteResult result = documentCollection.nonOrderedBulkWrite(bulkWriter -> {
+				for (Object element : batch) {
+					write(bulkWriter, preWriteProcessor, (PatchedDocument) element);
+				}
+			});
+			int numMissing = getNumMissingDocuments(result, batch.size());
+			if (numMissing > 0) {
+				log.warn("Did not write back {} patched documents to {}, as they were removed from the database after they were loaded",
+						numMissing, collectionName);
+			}
+			numWrittenDocuments.add(batch.size() - numMissing);
+			numMissingDocuments.add(numMissing);
+		} catch (RuntimeException e) {
+			// Keep draining the queue, without writing, so that loading is not blocked
+			log.error("Failed to write back {} patched documents to {}", batch.size(), collectionName, e);
+			failure.compareAndSet(null, e);
+		}
+	}
+
+}
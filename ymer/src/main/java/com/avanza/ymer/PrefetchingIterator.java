@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Consumes a source stream on a background thread and keeps a bounded number of elements ready for the consumer. <p>
+ *
+ * The prefetched elements are bounded both by count and by their estimated size in bytes, so the source
+ * blocks when the consumer falls behind. A single element larger than the byte budget is still prefetched
+ * when no other element is waiting. A failure in the source is rethrown to the consumer once all elements
+ * read before the failure are consumed. <p>
+ *
+ * The source stream is closed on the background thread when it is exhausted. Closing the prefetched stream
+ * stops the background thread.
+ */
+final class PrefetchingIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final Deque<Prefetched<T>> buffer = new ArrayDeque<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition notEmpty = lock.newCondition();
+	private final int maxElements;
+	private final long maxBytes;
+	private final ToLongFunction<? super T> sizeEstimator;
+	private final ExecutorService executor;
+	private long bufferedBytes = 0;
+	private boolean sourceComplete = false;
+	private Throwable failure;
+	private T next;
+
+	private PrefetchingIterator(Stream<T> source, int maxElements, long maxBytes, ToLongFunction<? super T> sizeEstimator, String threadNamePrefix) {
+		if (maxElements < 1) {
+			throw new IllegalArgumentException("maxElements must be a positive integer, was maxElements=" + maxElements + "!");
+		}
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be a positive integer, was maxBytes=" + maxBytes + "!");
+		}
+		this.maxElements = maxElements;
+		this.maxBytes = maxBytes;
+		this.sizeEstimator = sizeEstimator;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+		threadFactory.setDaemon(true);
+		this.executor = Executors.newSingleThreadExecutor(threadFactory);
+		executor.execute(() -> drain(source));
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns a stream with all elements from the given {@code source}, which is consumed ahead of the returned
+	 * stream by at most {@code maxElements} elements and {@code maxBytes} bytes, as estimated by {@code sizeEstimator}.
+	 */
+	static <T> Stream<T> prefetch(Stream<T> source, int maxElements, long maxBytes, ToLongFunction<? super T> sizeEstimator, String threadNamePrefix) {
+		PrefetchingIterator<T> prefetcher = new PrefetchingIterator<>(source, maxElements, maxBytes, sizeEstimator, threadNamePrefix);
+		return StreamSupport.stream(spliteratorUnknownSize(prefetcher, 0), false)
+				.onClose(prefetcher::close);
+	}
+
+	private void drain(Stream<T> source) {
+		Throwable sourceFailure = null;
+		try (Stream<T> stream = source) {
+			Iterator<T> elements = stream.iterator();
+			while (elements.hasNext()) {
+				T element = elements.next();
+				put(element, Math.max(0, sizeEstimator.applyAsLong(element)));
+			}
+		} catch (InterruptedException e) {
+			// Prefetched stream has been closed
+			Thread.currentThread().interrupt();
+			return;
+		} catch (RuntimeException | Error e) {
+			sourceFailure = e;
+		}
+		complete(sourceFailure);
+	}
+
+	private void put(T element, long size) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (buffer.size() >= maxElements || (!buffer.isEmpty() && bufferedBytes + size > maxBytes)) {
+				notFull.await();
+			}
+			buffer.addLast(new Prefetched<>(element, size));
+			bufferedBytes += size;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void complete(Throwable sourceFailure) {
+		lock.lock();
+		try {
+			sourceComplete = true;
+			failure = sourceFailure;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		lock.lock();
+		try {
+			while (buffer.isEmpty() && !sourceComplete) {
+				awaitElement();
+			}
+			if (!buffer.isEmpty()) {
+				Prefetched<T> prefetched = buffer.removeFirst();
+				bufferedBytes -= prefetched.size;
+				next = prefetched.element;
+				notFull.signal();
+			} else if (failure != null) {
+				throw new IllegalStateException("Failed to read source stream", failure);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return next != null;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T result = next;
+		next = null;
+		return result;
+	}
+
+	private void awaitElement() {
+		try {
+			notEmpty.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("Interrupted while waiting for source stream", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		lock.lock();
+		try {
+			buffer.clear();
+			bufferedBytes = 0;
+			notFull.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static final class Prefetched<T> {
+		private final T element;
+		private final long size;
+
+		Prefetched(T element, long size) {
+			this.element = element;
+			this.size = size;
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.IndexOptions;
+
+/**
+ * Applies an exclusion projection to all documents read through the decorated collection. Writes are delegated
+ * unchanged. <p>
+ *
+ * Raw documents are read unprojected, see {@link #findRawByTemplate(Document)}.
+ */
+final class ProjectedDocumentCollection implements DocumentCollection {
+
+	private final DocumentCollection delegate;
+	private final Document projection;
+
+	ProjectedDocumentCollection(DocumentCollection delegate, Document projection) {
+		this.delegate = Objects.requireNonNull(delegate);
+		this.projection = Objects.requireNonNull(projection);
+	}
+
+	@Override
+	public Stream<Document> findAll() {
+		return findByTemplate(new Document());
+	}
+
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter) {
+		return findByTemplate(MongoPartitionFilter.createDocumentFilter(objectFilter));
+	}
+
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter, Document idRange) {
+		Document partitionFilter = MongoPartitionFilter.createDocumentFilter(objectFilter);
+		return findByTemplate(partitionFilter.isEmpty() ? idRange : new Document("$and", List.of(partitionFilter, idRange)));
+	}
+
+	@Override
+	public List<Document> splitIdRanges(int numRanges) {
+		return delegate.splitIdRanges(numRanges);
+	}
+
+	@Override
+	public Stream<Document> findByTemplate(Document template) {
+		return delegate.findByQuery(new BasicQuery(template, projection));
+	}
+
+	/**
+	 * Raw documents are only partially decoded, and are therefore read without projection.
+	 */
+	@Override
+	public Stream<RawDocument> findRawByTemplate(Document template) {
+		return delegate.findRawByTemplate(template);
+	}
+
+	@Override
+	public Document findById(Object id) {
+		try (Stream<Document> documents = findByTemplate(new Document("_id", id))) {
+			return documents.findFirst().orElse(null);
+		}
+	}
+
+	@Override
+	public Stream<Document> findByQuery(Query query) {
+		return delegate.findByQuery(project(query));
+	}
+
+	@Override
+	public Optional<Document> explain(Query query) {
+		return delegate.explain(project(query));
+	}
+
+	private Query project(Query query) {
+		BasicQuery projectedQuery = new BasicQuery(query.getQueryObject(), project(query.getFieldsObject()));
+		projectedQuery.setSortObject(query.getSortObject());
+		Integer batchSize = query.getMeta().getCursorBatchSize();
+		if (batchSize != null) {
+			projectedQuery.cursorBatchSize(batchSize);
+		}
+		if (query.getHint() != null) {
+			projectedQuery.withHint(query.getHint());
+		}
+		return projectedQuery;
+	}
+
+	/**
+	 * Adds the excluded fields to the given fields, unless the given fields select which fields to include, as
+	 * inclusion and exclusion cannot be combined in a projection.
+	 */
+	private Document project(Document fields) {
+		boolean includesFields = fields.entrySet().stream()
+				.anyMatch(field -> !"_id".equals(field.getKey()) && isInclusion(field.getValue()));
+		if (includesFields) {
+			return fields;
+		}
+		Document projectedFields = new Document(projection);
+		projectedFields.putAll(fields);
+		return projectedFields;
+	}
+
+	private static boolean isInclusion(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).intValue() != 0;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		// Projection operators, e.g. $slice or $elemMatch
+		return value instanceof Document;
+	}
+
+	@Override
+	public Stream<Document> findByIds(Collection<Object> ids) {
+		return findByTemplate(new Document("_id", new Document("$in", ids)));
+	}
+
+	@Override
+	public OptionalLong getDataSize() {
+		return delegate.getDataSize();
+	}
+
+	@Override
+	public Optional<Document> getChangeStreamPosition() {
+		return delegate.getChangeStreamPosition();
+	}
+
+	@Override
+	public Optional<Set<Object>> findIdsChangedSince(Document position, int maxChanges) {
+		return delegate.findIdsChangedSince(position, maxChanges);
+	}
+
+	@Override
+	public void replace(Document oldVersion, Document newVersion) {
+		delegate.replace(oldVersion, newVersion);
+	}
+
+	@Override
+	public void update(Document document) {
+		delegate.update(document);
+	}
+
+	@Override
+	public BulkWriteResult nonOrderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
+		return delegate.nonOrderedBulkWrite(bulkWriter);
+	}
+
+	@Override
+	public BulkWriteResult orderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
+		return delegate.orderedBulkWrite(bulkWriter);
+	}
+
+	@Override
+	public void insert(Document dbObject) {
+		delegate.insert(dbObject);
+	}
+
+	@Override
+	public void delete(Document document) {
+		delegate.delete(document);
+	}
+
+	@Override
+	public void insertAll(Document... documents) {
+		delegate.insertAll(documents);
+	}
+
+	@Override
+	public Stream<IndexInfo> getIndexes() {
+		return delegate.getIndexes();
+	}
+
+	@Override
+	public void dropIndex(String name) {
+		delegate.dropIndex(name);
+	}
+
+	@Override
+	public void createIndex(Document keys, IndexOptions indexOptions) {
+		delegate.createIndex(keys, indexOptions);
+	}
+
+}
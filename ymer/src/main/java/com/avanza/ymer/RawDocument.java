@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.Objects;
+import java.util.Set;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+
+/**
+ * A document read from the database that is backed by its raw bson bytes. <p>
+ *
+ * Single fields can be read without decoding the whole document, which makes it cheap to discard
+ * documents before they are decoded into a {@link Document}.
+ */
+final class RawDocument {
+
+	private static final BsonValueCodec BSON_VALUE_CODEC = new BsonValueCodec();
+
+	private final RawBsonDocument bson;
+	private final Decoder<Document> decoder;
+
+	RawDocument(RawBsonDocument bson, Decoder<Document> decoder) {
+		this.bson = Objects.requireNonNull(bson);
+		this.decoder = Objects.requireNonNull(decoder);
+	}
+
+	/**
+	 * Reads the given top level fields into a new document in a single pass over the bytes, without decoding
+	 * any other field. Int32, int64 and string values are read as Integer, Long and String, all other values
+	 * as {@link org.bson.BsonValue BsonValue}.
+	 */
+	Document readFields(Set<String> fieldNames) {
+		Document fields = new Document();
+		try (BsonBinaryReader reader = new BsonBinaryReader(bson.getByteBuffer().asNIO())) {
+			reader.readStartDocument();
+			while (fields.size() < fieldNames.size() && reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+				String name = reader.readName();
+				if (fieldNames.contains(name)) {
+					fields.put(name, readValue(reader));
+				} else {
+					reader.skipValue();
+				}
+			}
+		}
+		return fields;
+	}
+
+	private static Object readValue(BsonBinaryReader reader) {
+		switch (reader.getCurrentBsonType()) {
+			case INT32:
+				return reader.readInt32();
+			case INT64:
+				return reader.readInt64();
+			case STRING:
+				return reader.readString();
+			default:
+				return BSON_VALUE_CODEC.decode(reader, DecoderContext.builder().build());
+		}
+	}
+
+	RawBsonDocument getBson() {
+		return bson;
+	}
+
+	/**
+	 * Decodes the whole document into a new, mutable {@link Document}.
+	 */
+	Document decode() {
+		return bson.decode(decoder);
+	}
+
+	@Override
+	public String toString() {
+		return bson.toJson();
+	}
+}
@@ -25,19 +25,33 @@ public final class ReloadableYmerProperties {
 
 	private final Supplier<Optional<Integer>> nextNumberOfInstances;
 	private final BooleanSupplier useBulkWrites;
+	private final BooleanSupplier coalesceBulkOperations;
+	private final BooleanSupplier useUnorderedBulkWrites;
 
 	private ReloadableYmerProperties(
 			Supplier<Optional<Integer>> nextNumberOfInstances,
-			BooleanSupplier useBulkWrites
+			BooleanSupplier useBulkWrites,
+			BooleanSupplier coalesceBulkOperations,
+			BooleanSupplier useUnorderedBulkWrites
 	) {
 		this.nextNumberOfInstances = requireNonNull(nextNumberOfInstances);
 		this.useBulkWrites = requireNonNull(useBulkWrites);
+		this.coalesceBulkOperations = requireNonNull(coalesceBulkOperations);
+		this.useUnorderedBulkWrites = requireNonNull(useUnorderedBulkWrites);
 	}
 
 	public boolean useBulkWrites() {
 		return useBulkWrites.getAsBoolean();
 	}
 
+	public boolean coalesceBulkOperations() {
+		return coalesceBulkOperations.getAsBoolean();
+	}
+
+	public boolean useUnorderedBulkWrites() {
+		return useUnorderedBulkWrites.getAsBoolean();
+	}
+
 	public Optional<Integer> getNextNumberOfInstances() {
 		return nextNumberOfInstances.get()
 				.filter(numberOfInstances -> numberOfInstances > 0);
@@ -50,6 +64,8 @@ public final class ReloadableYmerProperties {
 	public static final class ReloadablePropertiesBuilder {
 		private Supplier<Optional<Integer>> nextNumberOfInstances = Optional::empty;
 		private BooleanSupplier useBulkWrites = () -> true;
+		private BooleanSupplier coalesceBulkOperations = () -> false;
+		private BooleanSupplier useUnorderedBulkWrites = () -> false;
 
 		private ReloadablePropertiesBuilder() {
 		}
@@ -77,8 +93,29 @@ public final class ReloadableYmerProperties {
 			return this;
 		}
 
+		/**
+		 * Enable this to let {@link BulkMirroredObjectWriter} collapse the operations on each space id within a batch to
+		 * their net effect before writing them, for example an insert followed by a remove of the same object is not
+		 * written at all. This is default {@code false}, which writes every operation of the batch.
+		 */
+		public ReloadablePropertiesBuilder coalesceBulkOperations(BooleanSupplier coalesceBulkOperations) {
+			this.coalesceBulkOperations = coalesceBulkOperations;
+			return this;
+		}
+
+		/**
+		 * Enable this to let {@link BulkMirroredObjectWriter} write each batch as non-ordered bulkWrites, which mongo
+		 * may execute in parallel. The batch is split into rounds containing at most one operation per space id, so
+		 * operations on the same object are still written in order, and a failing operation does not stop the rest of
+		 * its round. This is default {@code false}, which writes each batch as an ordered bulkWrite.
+		 */
+		public ReloadablePropertiesBuilder useUnorderedBulkWrites(BooleanSupplier useUnorderedBulkWrites) {
+			this.useUnorderedBulkWrites = useUnorderedBulkWrites;
+			return this;
+		}
+
 		public ReloadableYmerProperties build() {
-			return new ReloadableYmerProperties(nextNumberOfInstances, useBulkWrites);
+			return new ReloadableYmerProperties(nextNumberOfInstances, useBulkWrites, coalesceBulkOperations, useUnorderedBulkWrites);
 		}
 	}
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.Spliterators.spliteratorUnknownSize;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoException;
+
+/**
+ * Scans a collection in _id order and resumes the scan after the last read document, as recorded in an
+ * {@link IdCheckpoint}, when reading fails with a {@link MongoException}, for instance because the cursor timed out
+ * or the primary stepped down. <p>
+ *
+ * The scan is given a reader, which reads all documents matching a given _id filter in ascending _id order.
+ */
+final class ResumableIdScan implements Iterator<Document> {
+
+	static final int MAX_RESUMES = 10;
+
+	/**
+	 * The aliases of the types an _id can have, in the order the types are sorted by mongo
+	 */
+	private static final List<String> ID_TYPE_ORDER = List.of("number", "string", "object", "binData", "objectId", "bool", "date", "timestamp");
+
+	private static final Logger log = LoggerFactory.getLogger(ResumableIdScan.class);
+
+	private final Function<Document, Stream<Document>> reader;
+	private final IdCheckpoint checkpoint;
+	private final long resumeBackoffMillis;
+	private Stream<Document> current;
+	private Iterator<Document> documents;
+
+	private ResumableIdScan(Function<Document, Stream<Document>> reader, IdCheckpoint checkpoint, long resumeBackoffMillis) {
+		this.reader = Objects.requireNonNull(reader);
+		this.checkpoint = Objects.requireNonNull(checkpoint);
+		this.resumeBackoffMillis = resumeBackoffMillis;
+	}
+
+	/**
+	 * Returns a stream of all documents read by the given reader, which is called with an empty filter when the
+	 * scan starts, and with a filter matching the ids after the last read document whenever the scan is resumed.
+	 */
+	static Stream<Document> scan(Function<Document, Stream<Document>> reader, IdCheckpoint checkpoint) {
+		return scan(reader, checkpoint, 1_000);
+	}
+
+	static Stream<Document> scan(Function<Document, Stream<Document>> reader, IdCheckpoint checkpoint, long resumeBackoffMillis) {
+		ResumableIdScan scan = new ResumableIdScan(reader, checkpoint, resumeBackoffMillis);
+		return StreamSupport.stream(spliteratorUnknownSize(scan, 0), false)
+				.onClose(scan::closeCurrent);
+	}
+
+	/**
+	 * Creates a filter that matches all documents sorted after the given _id. Comparison operators only match
+	 * values of the same type, so ids of types that are sorted after the type of the given id are matched separately.
+	 */
+	static Document idsAfter(Object id) {
+		Document sameType = new Document("_id", new Document("$gt", id));
+		int typeIndex = ID_TYPE_ORDER.indexOf(getTypeAlias(id));
+		if (typeIndex < 0 || typeIndex == ID_TYPE_ORDER.size() - 1) {
+			return sameType;
+		}
+		List<String> laterTypes = new ArrayList<>(ID_TYPE_ORDER.subList(typeIndex + 1, ID_TYPE_ORDER.size()));
+		return new Document("$or", List.of(sameType, new Document("_id", new Document("$type", laterTypes))));
+	}
+
+	private static String getTypeAlias(Object id) {
+		if (id instanceof Number) {
+			return "number";
+		} else if (id instanceof String) {
+			return "string";
+		} else if (id instanceof Map) {
+			return "object";
+		} else if (id instanceof Binary || id instanceof UUID || id instanceof byte[]) {
+			return "binData";
+		} else if (id instanceof ObjectId) {
+			return "objectId";
+		} else if (id instanceof Boolean) {
+			return "bool";
+		} else if (id instanceof Date) {
+			return "date";
+		} else if (id instanceof BsonTimestamp) {
+			return "timestamp";
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (true) {
+			try {
+				if (documents == null) {
+					open();
+				}
+				boolean hasNext = documents.hasNext();
+				if (!hasNext) {
+					checkpoint.complete();
+				}
+				return hasNext;
+			} catch (MongoException e) {
+				closeCurrent();
+				if (checkpoint.getNumResumes() >= MAX_RESUMES) {
+					throw e;
+				}
+				checkpoint.resumed();
+				log.warn("Failed to read {}, resuming after {} documents from checkpoint {} (attempt {} of {})",
+						checkpoint.getName(), checkpoint.getNumDocuments(), checkpoint, checkpoint.getNumResumes(), MAX_RESUMES, e);
+				awaitBackoff(e);
+			}
+		}
+	}
+
+	@Override
+	public Document next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Document document = documents.next();
+		checkpoint.record(document.get("_id"));
+		return document;
+	}
+
+	private void open() {
+		Object lastId = checkpoint.getLastId();
+		current = reader.apply(lastId == null ? new Document() : idsAfter(lastId));
+		documents = current.iterator();
+	}
+
+	private void closeCurrent() {
+		documents = null;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (RuntimeException e) {
+				log.debug("Failed to close cursor of {}", checkpoint.getName(), e);
+			}
+			current = null;
+		}
+	}
+
+	private void awaitBackoff(MongoException cause) {
+		try {
+			Thread.sleep(resumeBackoffMillis * checkpoint.getNumResumes());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cause.addSuppressed(e);
+			throw cause;
+		}
+	}
+
+}
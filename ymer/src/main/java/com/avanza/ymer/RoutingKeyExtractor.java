@@ -17,12 +17,25 @@ package com.avanza.ymer;
 
 import java.lang.reflect.Method;
 import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+import org.bson.Document;
 
 import com.gigaspaces.annotation.pojo.SpaceId;
 
 interface RoutingKeyExtractor {
 
 	Object getRoutingKey(Object spaceObject);
+
+	/**
+	 * Returns the routing key of the space object stored in the given document, if it can be read from
+	 * the document without converting it.
+	 */
+	default Optional<Object> getRoutingKeyFromDocument(Document document) {
+		return Optional.empty();
+	}
 	
 	/**
 	 * Routing for space objects works differently for gigaspace objects that has an autogenerated key.
@@ -71,9 +84,11 @@ interface RoutingKeyExtractor {
 	class InstanceMethod implements RoutingKeyExtractor {
 
 		private final Method m;
+		private final Class<?> idType;
 
 		public InstanceMethod(Method m) {
 			this.m = Objects.requireNonNull(m);
+			this.idType = m.isAnnotationPresent(SpaceId.class) ? storedAsIsIdType(m.getReturnType()) : null;
 		}
 
 		@Override
@@ -85,6 +100,31 @@ interface RoutingKeyExtractor {
 			}
 		}
 
+		/**
+		 * When routing on the space id, the routing key is the _id of the document as long as the id is
+		 * stored as is, i.e. has the same type in the document as in the space object.
+		 */
+		@Override
+		public Optional<Object> getRoutingKeyFromDocument(Document document) {
+			if (idType == null) {
+				return Optional.empty();
+			}
+			Object id = document.get("_id");
+			return id != null && id.getClass() == idType ? Optional.of(id) : Optional.empty();
+		}
+
+		@Nullable
+		private static Class<?> storedAsIsIdType(Class<?> type) {
+			if (type == String.class || type == Integer.class || type == Long.class) {
+				return type;
+			} else if (type == int.class) {
+				return Integer.class;
+			} else if (type == long.class) {
+				return Long.class;
+			}
+			return null;
+		}
+
 	}
 	
 }
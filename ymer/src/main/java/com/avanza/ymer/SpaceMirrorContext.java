@@ -45,19 +45,28 @@ final class SpaceMirrorContext {
 	private final MirrorExceptionListener mirrorExceptionListener;
 	private final Plugins plugins;
 	private final int numParallelCollections;
+	private final InitialLoadExecutor initialLoadExecutor;
+	private final InitialLoadCheckpoints initialLoadCheckpoints = new InitialLoadCheckpoints();
+	private final Map<String, InitialLoadStatistics> initialLoadStatisticsByCollection = new ConcurrentHashMap<>();
 
 	SpaceMirrorContext(MirroredObjects mirroredObjects, DocumentConverter documentConverter, DocumentDb documentDb, MirrorExceptionListener mirrorExceptionListener, Plugins plugins, int numParallelCollections) {
+		this(mirroredObjects, documentConverter, documentDb, mirrorExceptionListener, plugins, numParallelCollections, new InitialLoadExecutor(Runtime.getRuntime().availableProcessors()));
+	}
+
+	SpaceMirrorContext(MirroredObjects mirroredObjects, DocumentConverter documentConverter, DocumentDb documentDb, MirrorExceptionListener mirrorExceptionListener, Plugins plugins, int numParallelCollections, InitialLoadExecutor initialLoadExecutor) {
 		this.documentDb = Objects.requireNonNull(documentDb);
 		this.mirrorExceptionListener = Objects.requireNonNull(mirrorExceptionListener);
 		this.mirroredObjects = Objects.requireNonNull(mirroredObjects);
 		this.documentConverter = Objects.requireNonNull(documentConverter);
 		this.plugins = Objects.requireNonNull(plugins);
 		this.numParallelCollections = numParallelCollections;
+		this.initialLoadExecutor = Objects.requireNonNull(initialLoadExecutor);
 
 		for (MirroredObject<?> mirroredObject : mirroredObjects.getMirroredObjects()) {
 			DocumentCollection documentCollection = documentDb.getCollection(
 					mirroredObject.getCollectionName(),
-					mirroredObject.getReadPreference()
+					mirroredObject.getReadPreference(),
+					mirroredObject.getCursorProfile()
 			);
 			this.documentCollectionByMirroredType.put(mirroredObject.getMirroredType(), documentCollection);
 			this.documentCollectionByName.put(mirroredObject.getCollectionName(), documentCollection);
@@ -85,14 +94,50 @@ final class SpaceMirrorContext {
 	}
 
 	<T> MirroredObjectLoader<T> createDocumentLoader(MirroredObject<T> document, int instanceId, int partitionCount) {
-		DocumentCollection documentCollection = getDocumentCollection(document.getMirroredType());
+		return createDocumentLoader(document, instanceId, partitionCount, new InitialLoadStatistics());
+	}
+
+	/**
+	 * Creates a loader for initial load, which records its statistics in the statistics of the collection, see
+	 * {@link #getInitialLoadStatistics(MirroredObject)}.
+	 */
+	<T> MirroredObjectLoader<T> createInitialLoadDocumentLoader(MirroredObject<T> document, int instanceId, int partitionCount) {
+		return createDocumentLoader(document, instanceId, partitionCount, getInitialLoadStatistics(document));
+	}
+
+	/**
+	 * Creates a loader for initial load like {@link #createInitialLoadDocumentLoader(MirroredObject, int, int)}, which
+	 * only reads the documents matching the given filter.
+	 */
+	<T> MirroredObjectLoader<T> createInitialLoadDocumentLoader(MirroredObject<T> document, int instanceId, int partitionCount, Document filter) {
+		return createDocumentLoader(document, new FilteredDocumentCollection(getDocumentCollection(document), filter),
+				instanceId, partitionCount, initialLoadCheckpoints, getInitialLoadStatistics(document));
+	}
+
+	/**
+	 * Creates a loader for documents that are loaded in the background after initial load, which only reads the
+	 * documents matching the given filter. Its progress is not part of the initial load checkpoints or statistics.
+	 */
+	<T> MirroredObjectLoader<T> createBackgroundLoadDocumentLoader(MirroredObject<T> document, int instanceId, int partitionCount, Document filter) {
+		return createDocumentLoader(document, new FilteredDocumentCollection(getDocumentCollection(document), filter),
+				instanceId, partitionCount, new InitialLoadCheckpoints(), new InitialLoadStatistics());
+	}
+
+	private <T> MirroredObjectLoader<T> createDocumentLoader(MirroredObject<T> document, int instanceId, int partitionCount, InitialLoadStatistics statistics) {
+		return createDocumentLoader(document, getDocumentCollection(document), instanceId, partitionCount, initialLoadCheckpoints, statistics);
+	}
+
+	private <T> MirroredObjectLoader<T> createDocumentLoader(MirroredObject<T> document, DocumentCollection documentCollection, int instanceId, int partitionCount, InitialLoadCheckpoints checkpoints, InitialLoadStatistics statistics) {
 		return new MirroredObjectLoader<>(
 				documentCollection,
 				documentConverter,
 				document,
 				SpaceObjectFilter.partitionFilter(document, instanceId, partitionCount),
 				new MirrorContextProperties(partitionCount, instanceId),
-				plugins.getPostReadProcessing(document.getMirroredType()));
+				plugins.getPostReadProcessing(document.getMirroredType()),
+				initialLoadExecutor,
+				checkpoints,
+				statistics);
 	}
 
 	Collection<MirroredObject<?>> getMirroredDocuments() {
@@ -111,6 +156,18 @@ final class SpaceMirrorContext {
 		return numParallelCollections;
 	}
 
+	InitialLoadExecutor getInitialLoadExecutor() {
+		return initialLoadExecutor;
+	}
+
+	InitialLoadCheckpoints getInitialLoadCheckpoints() {
+		return initialLoadCheckpoints;
+	}
+
+	InitialLoadStatistics getInitialLoadStatistics(MirroredObject<?> document) {
+		return initialLoadStatisticsByCollection.computeIfAbsent(document.getCollectionName(), collectionName -> new InitialLoadStatistics());
+	}
+
 	/**
 	 * Converts the given space object to a mongo document and appends
 	 * the current document version to the created mongo document. <p>
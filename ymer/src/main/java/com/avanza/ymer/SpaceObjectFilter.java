@@ -19,6 +19,8 @@ import static com.avanza.ymer.util.GigaSpacesInstanceIdUtil.getInstanceId;
 
 import java.util.Objects;
 
+import org.bson.Document;
+
 /**
  * Strategy for filtering out objects during initial load. <p>
  *
@@ -52,6 +54,14 @@ final class SpaceObjectFilter<T> {
 		return this.impl.accept(spaceObject);
 	}
 
+	/**
+	 * Returns false if the space object stored in the given document is known to be rejected by this filter,
+	 * which allows documents to be discarded before being patched and converted.
+	 */
+	boolean mayAccept(Document document) {
+		return !hasPartitionFilter() || getPartitionFilter().mayAccept(document);
+	}
+
 	interface Impl<T> {
 		boolean accept(T spaceObject);
 	}
@@ -81,6 +91,12 @@ final class SpaceObjectFilter<T> {
 			return isRoutedToThisPartition(spaceObject);
 		}
 
+		boolean mayAccept(Document document) {
+			return this.document.getRoutingKeyFromDocument(document)
+					.map(this::routesToThisPartition)
+					.orElse(true);
+		}
+
 		private boolean isRoutedToThisPartition(T spaceObject) {
 			Object routingKey = getRoutingKey(spaceObject);
 			if (routingKey == null) {
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static com.avanza.ymer.util.GigaSpacesInstanceIdUtil.getInstanceId;
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import org.bson.Document;
+
+/**
+ * Maps routing keys to a fixed number of virtual buckets, which are stored in each document. <p>
+ *
+ * The bucket of a routing key is its partition in a cluster with one partition per bucket, i.e. the absolute value
+ * of the hash code of the routing key modulo the number of buckets. For any number of partitions that divides the
+ * number of buckets, all routing keys in a bucket are therefore routed to the same partition, and the documents of a
+ * partition can be selected by their buckets.
+ */
+final class VirtualBuckets {
+
+	static final String INDEX_NAME = "_bucket_1";
+
+	private VirtualBuckets() {
+	}
+
+	static int getBucket(Object routingKey, int numBuckets) {
+		return getInstanceId(routingKey, numBuckets) - 1;
+	}
+
+	/**
+	 * Returns the buckets routed to the given partition, or empty if documents cannot be selected by bucket, because
+	 * the number of partitions does not divide the number of buckets.
+	 */
+	static Optional<List<Integer>> getBuckets(int numBuckets, int instanceId, int partitionCount) {
+		if (numBuckets % partitionCount != 0) {
+			return Optional.empty();
+		}
+		return Optional.of(IntStream.range(0, numBuckets)
+				.filter(bucket -> bucket % partitionCount == instanceId - 1)
+				.boxed()
+				.collect(toList()));
+	}
+
+	/**
+	 * Creates a filter that selects the documents in the given buckets. Documents that have not been written since
+	 * virtual buckets were enabled lack a bucket, and are selected using the given routing filter instead.
+	 */
+	static Document createFilter(List<Integer> buckets, Document routingFilter) {
+		Document inBuckets = new Document(MirroredObject.DOCUMENT_BUCKET, new Document("$in", buckets));
+		Document withoutBucket = new Document(MirroredObject.DOCUMENT_BUCKET, new Document("$exists", false));
+		if (!routingFilter.isEmpty()) {
+			withoutBucket = new Document("$and", List.of(withoutBucket, routingFilter));
+		}
+		return new Document("$or", List.of(inBuckets, withoutBucket));
+	}
+
+	static Document getIndexKeys() {
+		return new Document(MirroredObject.DOCUMENT_BUCKET, 1);
+	}
+}
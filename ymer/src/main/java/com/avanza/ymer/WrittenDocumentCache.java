@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.bson.Document;
+
+/**
+ * Keeps the last version written to the database of a bounded number of documents in a collection. The least
+ * recently used document is evicted when the cache is full.
+ * <p>
+ * A cached document is only valid as long as it is written by the mirror alone, changes made by others are not seen.
+ */
+final class WrittenDocumentCache {
+
+	private final Map<Object, Document> documentsById;
+
+	WrittenDocumentCache(int maxSize) {
+		this.documentsById = new LinkedHashMap<Object, Document>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Document> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	@Nullable
+	synchronized Document get(Object id) {
+		return documentsById.get(id);
+	}
+
+	synchronized void put(Document document) {
+		documentsById.put(document.get("_id"), document);
+	}
+
+	synchronized void invalidate(Object id) {
+		documentsById.remove(id);
+	}
+
+	synchronized int size() {
+		return documentsById.size();
+	}
+}
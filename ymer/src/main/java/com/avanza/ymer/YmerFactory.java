@@ -37,6 +37,7 @@ import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.core.convert.MongoConverter;
 
 import com.avanza.ymer.plugin.Plugin;
+import com.avanza.ymer.plugin.PreWriteProcessor;
 import com.gigaspaces.datasource.SpaceDataSource;
 import com.gigaspaces.sync.SpaceSynchronizationEndpoint;
 import com.mongodb.ReadPreference;
@@ -54,8 +55,17 @@ public final class YmerFactory implements ApplicationContextAware {
 	private ReadPreference readPreference = ReadPreference.primary();
 	private boolean exportExceptionHandleMBean = true;
 	private boolean exportOperationStatisticsMBean = true;
+	private boolean exportInitialLoadStatisticsMBean = true;
 	private Set<Plugin> plugins = Collections.emptySet();
 	private int numParallelCollections = 1;
+	private int numParallelCollectionWrites = 1;
+	private int numConversionThreads = 1;
+	private int maxCachedDocumentsForDiffUpdates = 0;
+	private boolean loadLargestCollectionsFirst = false;
+	private int numLoadWorkers = Runtime.getRuntime().availableProcessors();
+	private int numPrefetchedObjects = 0;
+	private long maxPrefetchedBytes = 64L * 1024 * 1024;
+	private Consumer<Object> backgroundLoadWriter;
 	private final ReloadableYmerProperties.ReloadablePropertiesBuilder ymerPropertiesBuilder = ReloadableYmerProperties.builder();
 
 	private final MirroredObjects mirroredObjects;
@@ -134,6 +144,15 @@ public final class YmerFactory implements ApplicationContextAware {
 		this.exportOperationStatisticsMBean = exportOperationStatisticsMBean;
 	}
 
+	/**
+	 * Defines whether MBeans exposing statistics about initial load should be exported by the
+	 * SpaceDataSource. The MBeans are named after the cluster and instance id of the partition and
+	 * are unregistered when the SpaceDataSource is closed. Default is true
+	 */
+	public void setExportInitialLoadStatisticsMBean(boolean exportInitialLoadStatisticsMBean) {
+		this.exportInitialLoadStatisticsMBean = exportInitialLoadStatisticsMBean;
+	}
+
 	/**
 	 * Sets a MirrorExceptionListener (optional). <p>
 	 *
@@ -148,6 +167,12 @@ public final class YmerFactory implements ApplicationContextAware {
 		this.plugins = plugins;
 	}
 
+	/**
+	 * Sets the number of collections that are loaded concurrently during initial load. Collections are
+	 * started in alphabetical order to keep the load order the same for all partitions.
+	 * <p>
+	 * Default is 1, which loads collections one after the other in a deterministic order.
+	 */
 	public void setNumParallelCollections(int numParallelCollections) {
 		if (numParallelCollections < 1) {
 			throw new IllegalArgumentException("numParallelCollections must be a positive integer, was numParallelCollections=" + numParallelCollections + "!");
@@ -155,6 +180,129 @@ public final class YmerFactory implements ApplicationContextAware {
 		this.numParallelCollections = numParallelCollections;
 	}
 
+	/**
+	 * Starts the largest collections first when collections are loaded in parallel, see
+	 * {@link #setNumParallelCollections(int)}, so that the total load time is not determined by a large collection
+	 * that is started last. The size of a collection is read from the collection statistics.
+	 * <p>
+	 * Default is false, which starts collections in alphabetical order. Partitions then read the same collections at
+	 * the same time, which makes better use of the database cache.
+	 */
+	public void setLoadLargestCollectionsFirst(boolean loadLargestCollectionsFirst) {
+		this.loadLargestCollectionsFirst = loadLargestCollectionsFirst;
+	}
+
+	/**
+	 * Sets the size of the thread pool that patches and converts documents during initial load.
+	 * The pool is shared by all collections, also when collections are loaded in parallel, and
+	 * documents are read from the database on separate threads.
+	 * <p>
+	 * Default is the number of available processors.
+	 */
+	public void setNumLoadWorkers(int numLoadWorkers) {
+		if (numLoadWorkers < 1) {
+			throw new IllegalArgumentException("numLoadWorkers must be a positive integer, was numLoadWorkers=" + numLoadWorkers + "!");
+		}
+		this.numLoadWorkers = numLoadWorkers;
+	}
+
+	/**
+	 * Sets the number of loaded objects that are prefetched on a background thread during initial load, so that
+	 * documents are read and converted while the space inserts previously loaded objects. The prefetched objects
+	 * are also bounded by {@link #setMaxPrefetchedBytes(long)}.
+	 * <p>
+	 * Default is 0, which disables prefetching.
+	 */
+	public void setNumPrefetchedObjects(int numPrefetchedObjects) {
+		if (numPrefetchedObjects < 0) {
+			throw new IllegalArgumentException("numPrefetchedObjects must not be negative, was numPrefetchedObjects=" + numPrefetchedObjects + "!");
+		}
+		this.numPrefetchedObjects = numPrefetchedObjects;
+	}
+
+	/**
+	 * Sets the maximum estimated size in bytes of the objects that are prefetched during initial load, see
+	 * {@link #setNumPrefetchedObjects(int)}. The size of an object is estimated by the average size of the
+	 * documents read from its collection, or 1 KiB when that is not known.
+	 * <p>
+	 * Default is 64 MiB.
+	 */
+	public void setMaxPrefetchedBytes(long maxPrefetchedBytes) {
+		if (maxPrefetchedBytes < 1) {
+			throw new IllegalArgumentException("maxPrefetchedBytes must be a positive integer, was maxPrefetchedBytes=" + maxPrefetchedBytes + "!");
+		}
+		this.maxPrefetchedBytes = maxPrefetchedBytes;
+	}
+
+	/**
+	 * Sets the writer for objects that are loaded in the background once initial load is complete, see
+	 * {@link MirroredObjectDefinition#hotInitialLoadTemplateFactory(TemplateFactory)}. The writer is typically
+	 * {@code object -> gigaSpace.write(object, WriteModifiers.WRITE_ONLY)}, so that objects written to the space
+	 * since initial load are not replaced. An object that the writer fails to write, for instance since it is
+	 * already in the space, is skipped and counted, and the remaining objects are still loaded. The loaded objects
+	 * are marked as reloaded {@link ReloadableSpaceObject}s, and are therefore not written back to the database by
+	 * the mirror.
+	 * <p>
+	 * Default is no writer, which loads all documents during initial load.
+	 */
+	public void setBackgroundLoadWriter(Consumer<Object> backgroundLoadWriter) {
+		this.backgroundLoadWriter = requireNonNull(backgroundLoadWriter);
+	}
+
+	/**
+	 * Sets the number of collections that the mirror writes to concurrently when a batch of operations from the
+	 * space touches several collections. Changes to a single collection are always written in order, and the batch
+	 * is only acknowledged once the changes to all collections are written.
+	 * <p>
+	 * Default is 1, which writes the collections one at a time.
+	 */
+	public void setNumParallelCollectionWrites(int numParallelCollectionWrites) {
+		if (numParallelCollectionWrites < 1) {
+			throw new IllegalArgumentException("numParallelCollectionWrites must be a positive integer, was numParallelCollectionWrites=" + numParallelCollectionWrites + "!");
+		}
+		this.numParallelCollectionWrites = numParallelCollectionWrites;
+	}
+
+	/**
+	 * Sets the number of threads that the mirror uses to convert space objects to documents before writing them.
+	 * Objects are converted in chunks, and written in the same order as they were received. Each object is only
+	 * converted once, also when the write of a batch is retried after a failing operation. A failed conversion is
+	 * retried once, as the {@link MongoConverter} may fail the first conversions of a type when used concurrently.
+	 * <p>
+	 * When numConversionThreads is greater than 1, the {@link PreWriteProcessor} plugins are called concurrently
+	 * from these threads, and must therefore be thread safe.
+	 * <p>
+	 * Default is 1, which converts objects on the thread that writes them.
+	 */
+	public void setNumConversionThreads(int numConversionThreads) {
+		if (numConversionThreads < 1) {
+			throw new IllegalArgumentException("numConversionThreads must be a positive integer, was numConversionThreads=" + numConversionThreads + "!");
+		}
+		this.numConversionThreads = numConversionThreads;
+	}
+
+	/**
+	 * Sets the number of documents per collection whose last written version is kept by the mirror, so that updates
+	 * of these documents only {@code $set} and {@code $unset} the fields that changed, rather than replacing the
+	 * whole document. This reduces the size of the oplog and of the writes for large documents. Updates of other
+	 * documents, and updates following a failed write of the same document, replace the whole document. Updates that
+	 * change nothing are not written at all.
+	 * <p>
+	 * The cached version of a document is only valid as long as the mirror is the only writer of it. Changes made by
+	 * others, such as fields added to the document or patched documents written back by the space data source, are
+	 * not detected and the following updates are computed against a stale version. Only use this when the mirror is
+	 * the only writer of the documents, and not together with writing back patched documents. An update of a
+	 * document that is missing in the database is written again as a replace of the whole document.
+	 * <p>
+	 * Default is 0, which replaces the whole document on every update.
+	 */
+	public void setMaxCachedDocumentsForDiffUpdates(int maxCachedDocumentsForDiffUpdates) {
+		if (maxCachedDocumentsForDiffUpdates < 0) {
+			throw new IllegalArgumentException("maxCachedDocumentsForDiffUpdates must not be negative, was maxCachedDocumentsForDiffUpdates=" + maxCachedDocumentsForDiffUpdates + "!");
+		}
+		this.maxCachedDocumentsForDiffUpdates = maxCachedDocumentsForDiffUpdates;
+	}
+
 	/**
 	 * Sets the read preference for queries against all document collections.
 	 * Use {@link ReadPreference#secondaryPreferred} or
@@ -175,14 +323,24 @@ public final class YmerFactory implements ApplicationContextAware {
 	}
 
 	public SpaceDataSource createSpaceDataSource() {
-		return new YmerSpaceDataSource(createSpaceMirrorContext());
+		YmerSpaceDataSource ymerSpaceDataSource = new YmerSpaceDataSource(createSpaceMirrorContext());
+		ymerSpaceDataSource.setLoadLargestCollectionsFirst(loadLargestCollectionsFirst);
+		ymerSpaceDataSource.setInitialLoadPrefetch(numPrefetchedObjects, maxPrefetchedBytes);
+		if (backgroundLoadWriter != null) {
+			ymerSpaceDataSource.setBackgroundLoader(new BackgroundLoader(backgroundLoadWriter));
+		}
+		ymerSpaceDataSource.setExportInitialLoadMBeans(exportInitialLoadStatisticsMBean);
+		return ymerSpaceDataSource;
 	}
 
 	public SpaceSynchronizationEndpoint createSpaceSynchronizationEndpoint() {
 		YmerSpaceSynchronizationEndpoint ymerSpaceSynchronizationEndpoint = new YmerSpaceSynchronizationEndpoint(
 				createSpaceMirrorContext(),
-				ymerPropertiesBuilder.build()
+				ymerPropertiesBuilder.build(),
+				numParallelCollectionWrites,
+				numConversionThreads
 		);
+		ymerSpaceSynchronizationEndpoint.setMaxCachedDocumentsForDiffUpdates(maxCachedDocumentsForDiffUpdates);
 		if (this.exportExceptionHandleMBean) {
 			ymerSpaceSynchronizationEndpoint.registerExceptionHandlerMBean();
 		}
@@ -205,7 +363,7 @@ public final class YmerFactory implements ApplicationContextAware {
 		if (mongoConverter.getMappingContext() instanceof ApplicationEventPublisherAware) {
 			((ApplicationEventPublisherAware) mongoConverter.getMappingContext()).setApplicationEventPublisher(null);
 		}
-		return new SpaceMirrorContext(mirroredObjects, documentConverter, documentDb, exceptionListener, new Plugins(plugins), numParallelCollections);
+		return new SpaceMirrorContext(mirroredObjects, documentConverter, documentDb, exceptionListener, new Plugins(plugins), numParallelCollections, new InitialLoadExecutor(numLoadWorkers));
 	}
 
 }
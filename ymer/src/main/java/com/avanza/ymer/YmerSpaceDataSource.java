@@ -16,77 +16,278 @@
 package com.avanza.ymer;
 
 import static java.util.Comparator.comparing;
+import static java.util.Comparator.reverseOrder;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import javax.management.ObjectName;
+
 import org.bson.Document;
 import org.openspaces.core.cluster.ClusterInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.avanza.ymer.MirroredObjectLoader.LoadedDocument;
+import com.avanza.ymer.plugin.PreWriteProcessor;
 import com.gigaspaces.datasource.DataIterator;
+import com.gigaspaces.datasource.DataSourceIdQuery;
+import com.gigaspaces.datasource.DataSourceIdsQuery;
+import com.mongodb.bulk.BulkWriteResult;
 
-final class YmerSpaceDataSource extends AbstractSpaceDataSource {
+final class YmerSpaceDataSource extends AbstractSpaceDataSource implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(YmerSpaceDataSource.class);
+    private static final int PARALLEL_LOAD_QUEUE_CAPACITY = 1_000;
+    private static final long DEFAULT_OBJECT_SIZE_ESTIMATE = 1_024;
 
     private final SpaceMirrorContext spaceMirrorContext;
     private ClusterInfo clusterInfo;
+    private int numPrefetchedObjects = 0;
+    private long maxPrefetchedBytes = Long.MAX_VALUE;
+    private BackgroundLoader backgroundLoader;
+    private boolean loadLargestCollectionsFirst = false;
+    private boolean exportInitialLoadMBeans = false;
+    private final Set<ObjectName> registeredMbeans = new HashSet<>();
 
     public YmerSpaceDataSource(SpaceMirrorContext spaceMirror) {
         this.spaceMirrorContext = spaceMirror;
     }
 
+    /**
+     * Loads the documents that are left out of initial load by a hot initial load template in the background once
+     * initial load is complete, see {@link MirroredObjectDefinition#hotInitialLoadTemplateFactory(TemplateFactory)}.
+     */
+    void setBackgroundLoader(BackgroundLoader backgroundLoader) {
+        this.backgroundLoader = backgroundLoader;
+    }
+
+    /**
+     * Starts the largest collections first when collections are loaded in parallel, see {@link #largestFirst(List, Function)}.
+     */
+    void setLoadLargestCollectionsFirst(boolean loadLargestCollectionsFirst) {
+        this.loadLargestCollectionsFirst = loadLargestCollectionsFirst;
+    }
+
+    /**
+     * Prefetches up to {@code numPrefetchedObjects} objects, and at most {@code maxPrefetchedBytes} estimated bytes,
+     * on a background thread during initial load. Prefetching is disabled when {@code numPrefetchedObjects} is 0.
+     */
+    void setInitialLoadPrefetch(int numPrefetchedObjects, long maxPrefetchedBytes) {
+        this.numPrefetchedObjects = numPrefetchedObjects;
+        this.maxPrefetchedBytes = maxPrefetchedBytes;
+    }
+
     @Override
     public DataIterator<Object> initialDataLoad() {
         InitialLoadCompleteDispatcher initialLoadCompleteDispatcher = new InitialLoadCompleteDispatcher();
 
-        Stream<Object> objectStream = spaceMirrorContext.getMirroredDocuments().stream()
+        List<MirroredObject<?>> mirroredObjects = spaceMirrorContext.getMirroredDocuments().stream()
                 .sorted(comparing(MirroredObject::getCollectionName)) // Make load order same for all partitions to reduce mongo cache misses
-                .collect(toList()).stream() // Pass through a list to make sorting not block the whole stream on iterator.next which will be called later
                 .filter(md -> !md.excludeFromInitialLoad())
-                .flatMap(mirroredObject -> load(mirroredObject, initialLoadCompleteDispatcher));
+                .collect(toList());
+
+        Stream<Object> objectStream;
+        int numParallelCollections = spaceMirrorContext.getNumParallelCollections();
+        if (numParallelCollections > 1 && mirroredObjects.size() > 1) {
+            if (loadLargestCollectionsFirst) {
+                mirroredObjects = largestFirst(mirroredObjects, mirroredObject -> spaceMirrorContext.getDocumentCollection(mirroredObject).getDataSize());
+                logger.info("Loading largest collections first, in order {}", mirroredObjects.stream().map(MirroredObject::getCollectionName).collect(toList()));
+            }
+            logger.info("Loading {} collections with up to {} collections in parallel", mirroredObjects.size(), numParallelCollections);
+            objectStream = loadInParallel(mirroredObjects, numParallelCollections, initialLoadCompleteDispatcher);
+        } else {
+            objectStream = mirroredObjects.stream()
+                    .flatMap(mirroredObject -> load(mirroredObject, initialLoadCompleteDispatcher));
+        }
+        if (numPrefetchedObjects > 0) {
+            logger.info("Prefetching up to {} objects and {} bytes during initial load", numPrefetchedObjects, maxPrefetchedBytes);
+            objectStream = PrefetchingIterator.prefetch(objectStream, numPrefetchedObjects, maxPrefetchedBytes, this::estimateSize, "Ymer-Initial-Load-Prefetch-");
+        }
+        // Collections register their callbacks while they are loaded, so completion is logged once all callbacks,
+        // such as waiting for patched documents to be written back, have run
+        return new IteratorAdapter(objectStream, () -> {
+            if (initialLoadCompleteDispatcher.initialLoadComplete()) {
+                logger.info("Initial load complete, {}", spaceMirrorContext.getInitialLoadExecutor());
+            }
+        });
+    }
+
+    /**
+     * Orders the given collections by descending data size. Since a collection is started as soon as a parallel slot
+     * is free, starting the largest collections first keeps a large collection from being started last and
+     * determining the total load time. Collections of equal or unknown size keep their given order, and collections
+     * of unknown size are started last. The order is the same for all partitions as long as they read the same
+     * collection statistics.
+     */
+    static <T> List<T> largestFirst(List<T> collections, Function<T, OptionalLong> dataSize) {
+        Map<T, Long> dataSizes = new HashMap<>();
+        collections.forEach(collection -> dataSizes.put(collection, dataSize.apply(collection).orElse(-1)));
+        return collections.stream()
+                .sorted(comparing(dataSizes::get, reverseOrder()))
+                .collect(toList());
+    }
 
-        return new IteratorAdapter(objectStream.iterator(), initialLoadCompleteDispatcher::initialLoadComplete);
+    /**
+     * Estimates the size of a loaded object by the average size of the documents read from its collection so far,
+     * which is only known when documents are read as raw bson.
+     */
+    private long estimateSize(Object spaceObject) {
+        InitialLoadStatistics statistics = spaceMirrorContext.getInitialLoadStatistics(spaceMirrorContext.getMirroredDocument(spaceObject.getClass()));
+        long numDocuments = statistics.getNumDocuments();
+        long numBytes = statistics.getNumBytes();
+        return numDocuments > 0 && numBytes > 0 ? numBytes / numDocuments : DEFAULT_OBJECT_SIZE_ESTIMATE;
+    }
+
+    /**
+     * Loads the given collections concurrently, at most {@code numParallelCollections} at a time.
+     * Collections are started in the given order, but objects from different collections are interleaved.
+     */
+    private Stream<Object> loadInParallel(List<MirroredObject<?>> mirroredObjects, int numParallelCollections, InitialLoadCompleteDispatcher initialLoadCompleteDispatcher) {
+        List<Supplier<Stream<Object>>> collectionLoads = mirroredObjects.stream()
+                .map(mirroredObject -> (Supplier<Stream<Object>>) () -> load(mirroredObject, initialLoadCompleteDispatcher).map(Object.class::cast))
+                .collect(toList());
+        return ConcurrentStreamMerger.merge(collectionLoads, numParallelCollections, PARALLEL_LOAD_QUEUE_CAPACITY, "Ymer-Initial-Load-");
     }
 
     <T> Stream<T> load(MirroredObject<T> mirroredObject, InitialLoadCompleteDispatcher initialLoadCompleteDispatcher) {
         logger.info("Loading all documents for type: {}", mirroredObject.getMirroredType().getName());
-        MirroredObjectLoader<T> documentLoader = spaceMirrorContext.createDocumentLoader(
-                mirroredObject,
-                getInstanceId(),
-                getPartitionCount());
+        if (mirroredObject.hasHotInitialLoadTemplate() && backgroundLoader == null) {
+            logger.warn("Configured to load hot documents first for collection {}, but no background load writer is configured. Will load all documents.",
+                    mirroredObject.getCollectionName());
+        }
+        boolean loadsRemainingInBackground = mirroredObject.hasHotInitialLoadTemplate() && backgroundLoader != null;
+        Document hotTemplate = loadsRemainingInBackground
+                ? mirroredObject.getHotInitialLoadTemplateFactory().create(getPartitionCount(), getInstanceId())
+                : null;
+        MirroredObjectLoader<T> documentLoader = loadsRemainingInBackground
+                ? spaceMirrorContext.createInitialLoadDocumentLoader(mirroredObject, getInstanceId(), getPartitionCount(), hotTemplate)
+                : spaceMirrorContext.createInitialLoadDocumentLoader(mirroredObject, getInstanceId(), getPartitionCount());
+        InitialLoadStatistics statistics = spaceMirrorContext.getInitialLoadStatistics(mirroredObject);
+        if (loadsRemainingInBackground && mirroredObject.useInitialLoadSnapshot()) {
+            logger.warn("Cannot use snapshot for collection {} since only hot documents are loaded during initial load", mirroredObject.getCollectionName());
+        }
 
         AtomicInteger counter = new AtomicInteger(0);
         long start = System.currentTimeMillis();
-
-        return documentLoader.streamAllObjects()
-                .map(createPatchedDocumentWriteBack(mirroredObject, initialLoadCompleteDispatcher))
+        long startNanos = System.nanoTime();
+
+        Stream<LoadedDocument<T>> loadedDocuments = mirroredObject.useInitialLoadSnapshot() && !loadsRemainingInBackground
+                ? documentLoader.streamAllObjects(new DocumentSnapshot(mirroredObject.getInitialLoadSnapshotDirectory().resolve(getLocalFileName(mirroredObject, ".snapshot"))))
+                : documentLoader.streamAllObjects();
+        if (mirroredObject.deferWriteBackPatchedDocuments()) {
+            loadedDocuments = withDeferredPatchedDocumentWriteBack(mirroredObject, loadedDocuments, initialLoadCompleteDispatcher);
+        } else if (mirroredObject.writeBackPatchedDocuments()) {
+            loadedDocuments = withPatchedDocumentWriteBack(mirroredObject, loadedDocuments, initialLoadCompleteDispatcher);
+        }
+        if (loadsRemainingInBackground) {
+            Document remainingDocuments = new Document("$nor", List.of(hotTemplate));
+            initialLoadCompleteDispatcher.onInitialLoadComplete(() -> loadInBackground(mirroredObject, remainingDocuments));
+        }
+        return loadedDocuments
+                .map(LoadedDocument::getDocument)
                 .peek(d -> counter.incrementAndGet())
-                .onClose(() -> logger.info("Loaded {} documents from {} in {} milliseconds!", counter.get(), mirroredObject.getCollectionName(), System.currentTimeMillis() - start));
+                .onClose(() -> {
+                    statistics.addTime(InitialLoadStatistics.Stage.LOAD, startNanos);
+                    logger.info("Loaded {} documents from {} in {} milliseconds! {}", counter.get(), mirroredObject.getCollectionName(), System.currentTimeMillis() - start, statistics);
+                });
     }
 
-    private <T> Function<LoadedDocument<T>, T> createPatchedDocumentWriteBack(MirroredObject<T> document, InitialLoadCompleteDispatcher initialLoadCompleteDispatcher) {
-        AtomicInteger totalWritebackCount = new AtomicInteger(0);
-        initialLoadCompleteDispatcher.onInitialLoadComplete(() -> logger.debug("Updated {} documents in db for {}", totalWritebackCount.get(), document.getMirroredType().getName()));
-        return loadedDocument -> {
-            if (document.writeBackPatchedDocuments()) {
-                loadedDocument.getPatchedDocument().ifPresent(patchedDocument -> doWriteBackPatchedDocument(document, patchedDocument));
-                totalWritebackCount.incrementAndGet();
+    /**
+     * Loads the documents matching the given filter on the background loader. Patched documents are written back
+     * to the database while loading.
+     */
+    private <T> void loadInBackground(MirroredObject<T> mirroredObject, Document filter) {
+        backgroundLoader.load(mirroredObject.getCollectionName(), () -> {
+            Stream<LoadedDocument<T>> loadedDocuments = spaceMirrorContext
+                    .createBackgroundLoadDocumentLoader(mirroredObject, getInstanceId(), getPartitionCount(), filter)
+                    .streamAllObjects();
+            if (mirroredObject.writeBackPatchedDocuments()) {
+                PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(
+                        spaceMirrorContext.getDocumentCollection(mirroredObject),
+                        spaceMirrorContext.getPreWriteProcessing(mirroredObject.getMirroredType()),
+                        mirroredObject.getCollectionName());
+                loadedDocuments = loadedDocuments
+                        .peek(loadedDocument -> loadedDocument.getPatchedDocument().ifPresent(writeBack::write))
+                        .onClose(writeBack::awaitCompletion);
             }
-            return loadedDocument.getDocument();
-        };
+            return loadedDocuments.map(LoadedDocument::getDocument);
+        });
+    }
+
+    /**
+     * Writes patched documents back to the database in the background while loading. Initial load is not
+     * complete until all patched documents are written.
+     */
+    private <T> Stream<LoadedDocument<T>> withPatchedDocumentWriteBack(MirroredObject<T> document, Stream<LoadedDocument<T>> loadedDocuments, InitialLoadCompleteDispatcher initialLoadCompleteDispatcher) {
+        PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(
+                spaceMirrorContext.getDocumentCollection(document),
+                spaceMirrorContext.getPreWriteProcessing(document.getMirroredType()),
+                document.getCollectionName());
+        initialLoadCompleteDispatcher.onInitialLoadComplete(() -> {
+            writeBack.awaitCompletion();
+            logger.debug("Updated {} documents in db for {}", writeBack.getNumWrittenDocuments(), document.getMirroredType().getName());
+        });
+        return loadedDocuments
+                .peek(loadedDocument -> loadedDocument.getPatchedDocument().ifPresent(patchedDocument -> writeBack(document, patchedDocument, writeBack::write)))
+                .onClose(writeBack::complete);
+    }
+
+    /**
+     * Spools patched documents to a local file while loading, and writes them back to the database once initial
+     * load is complete, see {@link DeferredPatchedDocumentWriteBack}.
+     */
+    private <T> Stream<LoadedDocument<T>> withDeferredPatchedDocumentWriteBack(MirroredObject<T> document, Stream<LoadedDocument<T>> loadedDocuments, InitialLoadCompleteDispatcher initialLoadCompleteDispatcher) {
+        PatchedDocumentSpool spool = new PatchedDocumentSpool(document.getWriteBackSpoolDirectory().resolve(getLocalFileName(document, ".spool")));
+        DeferredPatchedDocumentWriteBack writeBack = new DeferredPatchedDocumentWriteBack(
+                spaceMirrorContext.getDocumentCollection(document),
+                spaceMirrorContext.getPreWriteProcessing(document.getMirroredType()),
+                document.getCollectionName(),
+                spool,
+                document.getDeferredWriteBackDocumentsPerSecond());
+        initialLoadCompleteDispatcher.onInitialLoadComplete(writeBack::startWriteBack);
+        return loadedDocuments
+                .peek(loadedDocument -> loadedDocument.getPatchedDocument().ifPresent(patchedDocument -> writeBack(document, patchedDocument, writeBack::write)))
+                .onClose(writeBack::complete);
+    }
+
+    private void writeBack(MirroredObject<?> document, PatchedDocument patchedDocument, Consumer<PatchedDocument> writeBack) {
+        InitialLoadStatistics statistics = spaceMirrorContext.getInitialLoadStatistics(document);
+        long start = System.nanoTime();
+        writeBack.accept(patchedDocument);
+        statistics.addTime(InitialLoadStatistics.Stage.WRITE_BACK, start);
+        statistics.documentWrittenBack();
+    }
+
+    /**
+     * Returns the name of a local file that belongs to the given collection in this partition.
+     */
+    private String getLocalFileName(MirroredObject<?> document, String extension) {
+        return Stream.of(clusterInfo.getName(), document.getCollectionName(), clusterInfo.getInstanceId())
+                .filter(Objects::nonNull)
+                .map(String::valueOf)
+                .filter(part -> !part.isEmpty())
+                .collect(joining("-")) + extension;
     }
 
     private <T> PatchedDocument doWriteBackPatchedDocument(MirroredObject<T> document, PatchedDocument patchedDocument) {
@@ -96,9 +297,62 @@ final class YmerSpaceDataSource extends AbstractSpaceDataSource {
         return patchedDocument;
     }
 
+    /**
+     * Exports the initial load executor, checkpoints and statistics as MBeans once the cluster info is known, so
+     * that each partition registers them under its own names. They are unregistered when this data source is closed.
+     */
+    void setExportInitialLoadMBeans(boolean exportInitialLoadMBeans) {
+        this.exportInitialLoadMBeans = exportInitialLoadMBeans;
+    }
+
+    private void registerInitialLoadMBeans() {
+        registerMbean(spaceMirrorContext.getInitialLoadExecutor(), "InitialLoadExecutor", "initialLoadExecutor");
+        registerMbean(spaceMirrorContext.getInitialLoadCheckpoints(), "InitialLoadCheckpoints", "initialLoadCheckpoints");
+        spaceMirrorContext.getMirroredDocuments().forEach(mirroredObject ->
+                registerMbean(spaceMirrorContext.getInitialLoadStatistics(mirroredObject), "InitialLoadStatistics", "collection_" + mirroredObject.getCollectionName()));
+    }
+
+    private void registerMbean(Object object, String type, String name) {
+        String objectName = getMbeanName(type, name);
+        logger.debug("Registering MBean with name {}", objectName);
+        try {
+            ObjectName instance = ObjectName.getInstance(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(object, instance);
+            registeredMbeans.add(instance);
+        } catch (Exception e) {
+            logger.warn("Failed to register MBean with objectName='{}'", objectName, e);
+        }
+    }
+
+    String getMbeanName(String type, String name) {
+        StringBuilder objectName = new StringBuilder("se.avanzabank.space.mirror:type=").append(type);
+        Optional.ofNullable(clusterInfo.getName())
+                .filter(clusterName -> !clusterName.isEmpty())
+                .ifPresent(clusterName -> objectName.append(",cluster=").append(ObjectName.quote(clusterName)));
+        Optional.ofNullable(clusterInfo.getInstanceId())
+                .ifPresent(instanceId -> objectName.append(",instance=").append(instanceId));
+        return objectName.append(",name=").append(name).toString();
+    }
+
+    @Override
+    public void close() {
+        for (ObjectName registeredMbean : registeredMbeans) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredMbean);
+            } catch (Exception e) {
+                logger.warn("Failed to unregister MBean with objectName='{}'", registeredMbean, e);
+            }
+        }
+        registeredMbeans.clear();
+    }
+
     @Override
     public void setClusterInfo(ClusterInfo clusterInfo) {
         this.clusterInfo = clusterInfo;
+        if (exportInitialLoadMBeans) {
+            close();
+            registerInitialLoadMBeans();
+        }
     }
 
     @Override
@@ -132,6 +386,41 @@ final class YmerSpaceDataSource extends AbstractSpaceDataSource {
                 .collect(toList());
     }
 
+    @Override
+    public Object getById(DataSourceIdQuery idQuery) {
+        Class<?> spaceType = idQuery.getTypeDescriptor().getObjectClass();
+        if (!spaceMirrorContext.isMirroredType(spaceType)) {
+            return null;
+        }
+        List<?> spaceObjects = loadObjectsByIds(spaceType, List.of(idQuery.getId()));
+        return spaceObjects.isEmpty() ? null : spaceObjects.get(0);
+    }
+
+    @Override
+    public DataIterator<Object> getDataIteratorByIds(DataSourceIdsQuery idsQuery) {
+        Class<?> spaceType = idsQuery.getTypeDescriptor().getObjectClass();
+        if (!spaceMirrorContext.isMirroredType(spaceType)) {
+            return null;
+        }
+        List<?> spaceObjects = loadObjectsByIds(spaceType, Arrays.asList(idsQuery.getIds()));
+        return new IteratorAdapter(spaceObjects.stream().map(Object.class::cast), () -> { });
+    }
+
+    /**
+     * Loads the objects with the given ids in batches, and writes all patched documents back in a single bulk write.
+     * Ids that are not found, or that belong to another partition, are left out.
+     */
+    <T> List<T> loadObjectsByIds(Class<T> spaceType, Collection<?> ids) {
+        MirroredObject<T> mirroredObject = spaceMirrorContext.getMirroredDocument(spaceType);
+        MirroredObjectLoader<T> documentLoader = spaceMirrorContext.createDocumentLoader(mirroredObject, getInstanceId(), getPartitionCount());
+        List<LoadedDocument<T>> loadedDocuments = documentLoader.loadByIds(ids);
+        bulkWriteBackPatchedDocuments(mirroredObject, loadedDocuments);
+        return loadedDocuments
+                .stream()
+                .map(LoadedDocument::getDocument)
+                .collect(toList());
+    }
+
     private <T> void writeBackPatchedDocuments(MirroredObject<T> document, List<LoadedDocument<T>> loadedDocuments) {
         if (!document.writeBackPatchedDocuments()) {
             return;
@@ -143,14 +432,37 @@ final class YmerSpaceDataSource extends AbstractSpaceDataSource {
         logger.debug("Updated {} documents in db for {}", patchCount, document.getMirroredType().getName());
     }
 
+    private <T> void bulkWriteBackPatchedDocuments(MirroredObject<T> document, List<LoadedDocument<T>> loadedDocuments) {
+        if (!document.writeBackPatchedDocuments()) {
+            return;
+        }
+        List<PatchedDocument> patchedDocuments = loadedDocuments.stream()
+                .flatMap(loadedDocument -> loadedDocument.getPatchedDocument().stream())
+                .collect(toList());
+        if (patchedDocuments.isEmpty()) {
+            return;
+        }
+        PreWriteProcessor preWriteProcessor = spaceMirrorContext.getPreWriteProcessing(document.getMirroredType());
+        BulkWriteResult result = spaceMirrorContext.getDocumentCollection(document).nonOrderedBulkWrite(bulkWriter ->
+                patchedDocuments.forEach(patchedDocument -> PatchedDocumentWriteBack.write(bulkWriter, preWriteProcessor, patchedDocument)));
+        int numMissing = PatchedDocumentWriteBack.getNumMissingDocuments(result, patchedDocuments.size());
+        if (numMissing > 0) {
+            logger.warn("Did not write back {} patched documents for {}, as they were removed from the database after they were loaded",
+                    numMissing, document.getMirroredType().getName());
+        }
+        logger.debug("Updated {} documents in db for {}", patchedDocuments.size() - numMissing, document.getMirroredType().getName());
+    }
+
     // Helper classes
 
     private static class IteratorAdapter implements DataIterator<Object> {
+        private final Stream<Object> stream;
         private final Iterator<Object> it;
         private final Runnable iterationDone;
 
-        public IteratorAdapter(Iterator<Object> it, Runnable itrationDoneCallback) {
-            this.it = it;
+        public IteratorAdapter(Stream<Object> stream, Runnable itrationDoneCallback) {
+            this.stream = stream;
+            this.it = stream.iterator();
             this.iterationDone = itrationDoneCallback;
         }
 
@@ -175,18 +487,30 @@ final class YmerSpaceDataSource extends AbstractSpaceDataSource {
 
         @Override
         public void close() {
+            stream.close();
         }
     }
 
     static class InitialLoadCompleteDispatcher {
         private final List<Runnable> l = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean complete = new AtomicBoolean();
 
         public void onInitialLoadComplete(Runnable callback) {
             l.add(callback);
         }
 
-        public void initialLoadComplete() {
+        /**
+         * Runs the callbacks the first time it is called, as the data iterator may be asked for more elements
+         * after it is exhausted.
+         *
+         * @return true if the callbacks were run by this call
+         */
+        public boolean initialLoadComplete() {
+            if (!complete.compareAndSet(false, true)) {
+                return false;
+            }
             l.forEach(Runnable::run);
+            return true;
         }
     }
 }
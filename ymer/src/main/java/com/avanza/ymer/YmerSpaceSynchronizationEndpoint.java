@@ -22,6 +22,7 @@ import java.time.Duration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -42,6 +43,7 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import com.avanza.ymer.util.GigaSpacesInstanceIdUtil;
 import com.gigaspaces.sync.OperationsBatchData;
 import com.gigaspaces.sync.SpaceSynchronizationEndpoint;
+import com.mongodb.client.model.IndexOptions;
 
 final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoint implements ApplicationContextAware,
 		ApplicationListener<ContextRefreshedEvent>, AutoCloseable {
@@ -56,6 +58,8 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 	private final PersistedInstanceIdCalculationService persistedInstanceIdCalculationService;
 	private final SpaceMirrorContext spaceMirror;
 	private final ScheduledExecutorService scheduledExecutorService;
+	private final ExecutorService collectionWriteExecutor;
+	private final ExecutorService conversionExecutor;
 	private final Set<ObjectName> registeredMbeans = new HashSet<>();
 	private final ReloadableYmerProperties ymerProperties;
 
@@ -64,8 +68,21 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 
 	private final PerformedOperationMetrics operationStatistics;
 
-	@SuppressWarnings("deprecation")
 	public YmerSpaceSynchronizationEndpoint(SpaceMirrorContext spaceMirror, ReloadableYmerProperties ymerProperties) {
+		this(spaceMirror, ymerProperties, 1, 1);
+	}
+
+	/**
+	 * @param numParallelCollectionWrites the number of collections in a batch that are written concurrently, 1 writes
+	 *                                    all collections on the synchronization thread
+	 * @param numConversionThreads        the number of threads that convert space objects to documents, 1 converts
+	 *                                    them on the thread writing the collection
+	 */
+	@SuppressWarnings("deprecation")
+	YmerSpaceSynchronizationEndpoint(SpaceMirrorContext spaceMirror,
+			ReloadableYmerProperties ymerProperties,
+			int numParallelCollectionWrites,
+			int numConversionThreads) {
 		exceptionHandler = ToggleableDocumentWriteExceptionHandler.create(
 				new RethrowsTransientDocumentWriteExceptionHandler(),
 				new CatchesAllDocumentWriteExceptionHandler());
@@ -73,13 +90,24 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 		this.operationStatistics = new PerformedOperationMetrics();
 		final MirroredObjectFilterer mirroredObjectFilterer = new MirroredObjectFilterer(spaceMirror);
 		this.mirroredObjectWriter = new MirroredObjectWriter(spaceMirror, exceptionHandler, mirroredObjectFilterer, operationStatistics);
-		this.bulkMirroredObjectWriter = new BulkMirroredObjectWriter(spaceMirror, exceptionHandler, mirroredObjectFilterer, operationStatistics);
+		this.collectionWriteExecutor = numParallelCollectionWrites > 1 ? createExecutor("Ymer-Collection-Writer-", numParallelCollectionWrites) : null;
+		this.conversionExecutor = numConversionThreads > 1 ? createExecutor("Ymer-Document-Converter-", numConversionThreads) : null;
+		this.bulkMirroredObjectWriter = new BulkMirroredObjectWriter(spaceMirror, exceptionHandler, mirroredObjectFilterer, operationStatistics,
+				ymerProperties,
+				collectionWriteExecutor != null ? collectionWriteExecutor : Runnable::run,
+				conversionExecutor != null ? conversionExecutor : Runnable::run);
 		this.persistedInstanceIdCalculationService = new PersistedInstanceIdCalculationService(spaceMirror, ymerProperties);
 		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
 		this.ymerProperties = ymerProperties;
 		this.currentNumberOfPartitions = GigaSpacesInstanceIdUtil.getNumberOfPartitionsFromSystemProperty().orElse(null);
 	}
 
+	private static ExecutorService createExecutor(String threadNamePrefix, int numThreads) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+		threadFactory.setDaemon(true);
+		return Executors.newFixedThreadPool(numThreads, threadFactory);
+	}
+
 	@Override
 	public void onOperationsBatchSynchronization(OperationsBatchData batchData) {
 		if (ymerProperties.useBulkWrites()) {
@@ -107,6 +135,7 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 			GigaSpacesInstanceIdUtil.getNumberOfPartitionsFromSpaceProperties(applicationContext).ifPresent(
 					numberOfPartitions -> currentNumberOfPartitions = numberOfPartitions
 			);
+			createVirtualBucketIndexes();
 			if (spaceMirror.getMirroredDocuments().stream().anyMatch(MirroredObject::persistInstanceId)) {
 				if (currentNumberOfPartitions == null) {
 					log.warn("Could not determine current number of partitions. Will not be able to persist current instance id");
@@ -117,6 +146,20 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 		}
 	}
 
+	private void createVirtualBucketIndexes() {
+		spaceMirror.getMirroredDocuments().stream()
+				.filter(MirroredObject::useVirtualBuckets)
+				.forEach(mirroredObject -> {
+					try {
+						// Creating an index that already exists is a no-op
+						spaceMirror.getDocumentCollection(mirroredObject)
+								.createIndex(VirtualBuckets.getIndexKeys(), new IndexOptions().background(true).name(VirtualBuckets.INDEX_NAME));
+					} catch (RuntimeException e) {
+						log.warn("Failed to create virtual bucket index for collection {}", mirroredObject.getCollectionName(), e);
+					}
+				});
+	}
+
 	private void schedulePersistedIdCalculationIfNecessary() {
 		List<MirroredObject<?>> objectsNeedingInstanceIdCalculation = spaceMirror.getMirroredDocuments().stream()
 				.filter(MirroredObject::persistInstanceId)
@@ -134,6 +177,10 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 		}
 	}
 
+	void setMaxCachedDocumentsForDiffUpdates(int maxCachedDocumentsPerCollection) {
+		bulkMirroredObjectWriter.setMaxCachedDocumentsForDiffUpdates(maxCachedDocumentsPerCollection);
+	}
+
 	public PersistedInstanceIdCalculationService getPersistedInstanceIdCalculationService() {
 		return persistedInstanceIdCalculationService;
 	}
@@ -157,7 +204,10 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 	void registerOperationStatisticsMBean() {
 		String name = "se.avanzabank.space.mirror:type=OperationStatistics,name=operationStatistics";
 		registerMbean(operationStatistics, name);
-
+		spaceMirror.getMirroredDocuments().forEach(mirroredObject -> {
+			String coalescingBean = "se.avanzabank.space.mirror:type=OperationCoalescing,name=collection_" + mirroredObject.getCollectionName();
+			registerMbean(bulkMirroredObjectWriter.getCoalescingStatistics(mirroredObject.getCollectionName()), coalescingBean);
+		});
 	}
 
 	private void registerMbean(Object object, String name) {
@@ -174,6 +224,12 @@ final class YmerSpaceSynchronizationEndpoint extends SpaceSynchronizationEndpoin
 	@Override
 	public void close() {
 		scheduledExecutorService.shutdownNow();
+		if (collectionWriteExecutor != null) {
+			collectionWriteExecutor.shutdown();
+		}
+		if (conversionExecutor != null) {
+			conversionExecutor.shutdown();
+		}
 		for (ObjectName registeredMbean : registeredMbeans) {
 			try {
 				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredMbean);
@@ -20,7 +20,9 @@ import static com.avanza.ymer.TestSpaceMirrorObjectDefinitions.TEST_SPACE_OTHER_
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
@@ -30,6 +32,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -499,6 +504,265 @@ public class BulkMirroredObjectWriterTest {
 		assertThat(metrics.getNumFailures(), is(0L));
 	}
 
+	@Test
+	public void coalescesOperationsOnSameSpaceId() {
+		BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror, exceptionHandler,
+				new MirroredObjectFilterer(mirror), metrics,
+				ReloadableYmerProperties.builder().coalesceBulkOperations(() -> true).build(), Runnable::run, Runnable::run);
+		MirroredObject<TestSpaceObject> mirroredObject = TEST_SPACE_OBJECT
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentCollection collection = documentDb.getCollection(mirroredObject.getCollectionName());
+		collection.insert(documentConverter.convertToBsonDocument(new TestSpaceObject("3", "hello")));
+
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(
+				new FakeBulkItem(new TestSpaceObject("1", "hello"), DataSyncOperationType.WRITE, "1"),
+				new FakeBulkItem(new TestSpaceObject("1", "updated"), DataSyncOperationType.UPDATE, "1"),
+				new FakeBulkItem(new TestSpaceObject("2", "hello"), DataSyncOperationType.WRITE, "2"),
+				new FakeBulkItem(new TestSpaceObject("2", "hello"), DataSyncOperationType.REMOVE, "2"),
+				new FakeBulkItem(new TestSpaceObject("3", "first"), DataSyncOperationType.UPDATE, "3"),
+				new FakeBulkItem(new TestSpaceObject("3", "second"), DataSyncOperationType.UPDATE, "3")
+		));
+
+		List<Document> persisted = collection.findAll().collect(toList());
+		assertThat(persisted.stream().map(document -> document.getString("message")).collect(toList()),
+				containsInAnyOrder("updated", "second"));
+
+		// the insert followed by an update is written as an upserting replace
+		assertThat(metrics.getNumInserts(), is(0L));
+		assertThat(metrics.getNumUpdates(), is(2L));
+		assertThat(metrics.getNumDeletes(), is(0L));
+		OperationCoalescingStatistics statistics = bulkMirroredObjectWriter.getCoalescingStatistics(mirroredObject.getCollectionName());
+		assertThat(statistics.getNumReceivedOperations(), is(6L));
+		assertThat(statistics.getNumCoalescedOperations(), is(4L));
+	}
+
+	@Test
+	public void writesCoalescedInsertAndUpdateOfAlreadyInsertedDocument() {
+		BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror, exceptionHandler,
+				new MirroredObjectFilterer(mirror), metrics,
+				ReloadableYmerProperties.builder().coalesceBulkOperations(() -> true).build(), Runnable::run, Runnable::run);
+		DocumentCollection collection = mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName());
+		// inserted by an earlier delivery of the same batch
+		collection.insert(mirror.toVersionedDocument(new TestSpaceObject("1", "hello"), testMetadata));
+
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(
+				new FakeBulkItem(new TestSpaceObject("1", "hello"), DataSyncOperationType.WRITE, "1"),
+				new FakeBulkItem(new TestSpaceObject("1", "updated"), DataSyncOperationType.UPDATE, "1")
+		));
+
+		assertThat(collection.findById("1").getString("message"), is("updated"));
+		assertThat(mirrorExceptionSpy.getExceptionCount(), is(0));
+		assertThat(metrics.getNumFailures(), is(0L));
+	}
+
+	@Test
+	public void keepsRemoveFollowedByInsertOfSameSpaceId() {
+		List<BulkMirroredObjectWriter.MongoBulkChange> changes = BulkMirroredObjectWriter.coalesce(List.of(
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.UPDATE, "1", "update"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.INSERT, "2", "other"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.REMOVE, "1", "remove"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.INSERT, "1", "insert"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.UPDATE, null, "without id"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.UPDATE, null, "without id")
+		));
+
+		assertThat(changes.stream().map(change -> String.valueOf(change.getObject())).collect(toList()),
+				contains("other", "remove", "insert", "without id", "without id"));
+	}
+
+	@Test
+	public void writesCollectionsConcurrentlyAndPropagatesFailureAfterAllWrites() {
+		documentDb = throwsOnUpdateDocumentDb();
+		SpaceMirrorContext mirror = new SpaceMirrorContext(
+				new MirroredObjects(new TestSpaceMirrorObjectDefinitions().getMirroredObjectDefinitions().stream(), MirroredObjectDefinitionsOverride.noOverride()),
+				documentConverter, documentDb, mirrorExceptionSpy, Plugins.empty(), 1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror,
+					new FakeDocumentWriteExceptionHandler(new TransientDocumentWriteException(new Exception())),
+					new MirroredObjectFilterer(mirror), metrics, ReloadableYmerProperties.builder().build(), executor, Runnable::run);
+
+			FakeBatchData batch = FakeBatchData.create(
+					new FakeBulkItem(new TestSpaceObject("1", "hello"), DataSyncOperationType.UPDATE),
+					new FakeBulkItem(new TestSpaceOtherObject("1", "hello"), DataSyncOperationType.WRITE));
+			assertThrows(TransientDocumentWriteException.class, () -> bulkMirroredObjectWriter.executeBulk(testMetadata, batch));
+
+			assertThat(mirror.getDocumentCollection(TEST_SPACE_OTHER_OBJECT.collectionName()).findAll().count(), is(1L));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void unorderedBulkWritesReportAllFailuresWithoutRetrying() {
+		BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror, exceptionHandler,
+				new MirroredObjectFilterer(mirror), metrics,
+				ReloadableYmerProperties.builder().useUnorderedBulkWrites(() -> true).build(), Runnable::run, Runnable::run);
+		DocumentCollection collection = mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName());
+		collection.insert(mirror.toVersionedDocument(new TestSpaceObject("2", "existing"), testMetadata));
+		collection.insert(mirror.toVersionedDocument(new TestSpaceObject("4", "existing"), testMetadata));
+
+		bulkMirroredObjectWriter.executeBulk(testMetadata, new FakeBatchData(IntStream.rangeClosed(1, 5)
+				.mapToObj(i -> new FakeBulkItem(new TestSpaceObject(String.valueOf(i), "message" + i), DataSyncOperationType.WRITE, String.valueOf(i)))
+				.toArray(FakeBulkItem[]::new)));
+
+		assertThat(collection.findAll().count(), is(5L));
+		assertThat(mirrorExceptionSpy.getExceptionCount(), is(2));
+		assertThat(metrics.getNumInserts(), is(3L));
+		assertThat(metrics.getNumFailures(), is(2L));
+	}
+
+	@Test
+	public void splitsChangesIntoRoundsWithOneChangePerSpaceId() {
+		List<List<BulkMirroredObjectWriter.MongoBulkChange>> rounds = BulkMirroredObjectWriter.splitIntoRounds(List.of(
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.REMOVE, "1", "remove 1"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.UPDATE, "2", "update 2"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.INSERT, "1", "insert 1"),
+				new BulkMirroredObjectWriter.MongoBulkChange(MirrorOperation.INSERT, "3", "insert 3")
+		));
+
+		assertThat(rounds.stream()
+						.map(round -> round.stream().map(change -> String.valueOf(change.getObject())).collect(toList()))
+						.collect(toList()),
+				contains(List.of("remove 1", "update 2", "insert 3"), List.of("insert 1")));
+	}
+
+	@Test
+	public void convertsInParallelOnceAcrossRetries() {
+		AtomicInteger numConversions = new AtomicInteger();
+		DocumentConverter countingConverter = DocumentConverter.create(new DocumentConverter.Provider() {
+			@Override
+			public Document convertToBsonDocument(Object type) {
+				numConversions.incrementAndGet();
+				return documentConverter.convertToBsonDocument(type);
+			}
+
+			@Override
+			public <T> T convert(Class<T> toType, Document document) {
+				return documentConverter.convert(toType, document);
+			}
+
+			@Override
+			public Object convert(Object type) {
+				return documentConverter.convertToMongoObject(type);
+			}
+
+			@Override
+			public Query toQuery(Object template) {
+				return documentConverter.toQuery(template);
+			}
+		});
+		SpaceMirrorContext mirror = new SpaceMirrorContext(
+				new MirroredObjects(new TestSpaceMirrorObjectDefinitions().getMirroredObjectDefinitions().stream(), MirroredObjectDefinitionsOverride.noOverride()),
+				countingConverter, documentDb, mirrorExceptionSpy, Plugins.empty(), 1);
+		ExecutorService conversionExecutor = Executors.newFixedThreadPool(4);
+		try {
+			BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror, exceptionHandler,
+					new MirroredObjectFilterer(mirror), metrics, ReloadableYmerProperties.builder().build(), Runnable::run, conversionExecutor);
+			TestSpaceObject[] objects = IntStream.rangeClosed(1, 200)
+					.mapToObj(i -> new TestSpaceObject("id_" + i, "message" + i))
+					.toArray(TestSpaceObject[]::new);
+			// fails the first attempt, so that the remaining changes are retried
+			DocumentCollection collection = mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName());
+			collection.insert(documentConverter.convertToBsonDocument(objects[99]));
+
+			bulkMirroredObjectWriter.executeBulk(testMetadata, new FakeBatchData(Stream.of(objects)
+					.map(spaceObject -> new FakeBulkItem(spaceObject, DataSyncOperationType.WRITE))
+					.toArray(FakeBulkItem[]::new)));
+
+			assertThat(numConversions.get(), is(200));
+			assertThat(collection.findAll().map(document -> document.getString("_id")).collect(toList()),
+					contains(Stream.concat(Stream.of("id_100"), Stream.of(objects).map(TestSpaceObject::getId).filter(id -> !id.equals("id_100")))
+							.toArray(String[]::new)));
+			assertThat(metrics.getNumInserts(), is(199L));
+			assertThat(metrics.getNumFailures(), is(1L));
+		} finally {
+			conversionExecutor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void retriesFailedConversionOnce() {
+		AtomicInteger numConversions = new AtomicInteger();
+		DocumentConverter failingOnceConverter = DocumentConverter.create(new DocumentConverter.Provider() {
+			@Override
+			public Document convertToBsonDocument(Object type) {
+				if (numConversions.incrementAndGet() == 1) {
+					throw new IllegalStateException("Mapping context not yet initialized");
+				}
+				return documentConverter.convertToBsonDocument(type);
+			}
+
+			@Override
+			public <T> T convert(Class<T> toType, Document document) {
+				return documentConverter.convert(toType, document);
+			}
+
+			@Override
+			public Object convert(Object type) {
+				return documentConverter.convertToMongoObject(type);
+			}
+
+			@Override
+			public Query toQuery(Object template) {
+				return documentConverter.toQuery(template);
+			}
+		});
+		SpaceMirrorContext mirror = new SpaceMirrorContext(
+				new MirroredObjects(new TestSpaceMirrorObjectDefinitions().getMirroredObjectDefinitions().stream(), MirroredObjectDefinitionsOverride.noOverride()),
+				failingOnceConverter, documentDb, mirrorExceptionSpy, Plugins.empty(), 1);
+		BulkMirroredObjectWriter bulkMirroredObjectWriter = new BulkMirroredObjectWriter(mirror, exceptionHandler,
+				new MirroredObjectFilterer(mirror), metrics);
+
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(
+				new FakeBulkItem(new TestSpaceObject("1", "hello"), DataSyncOperationType.WRITE)));
+
+		assertThat(numConversions.get(), is(2));
+		assertThat(mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName()).findById("1"), notNullValue());
+		assertThat(metrics.getNumFailures(), is(0L));
+	}
+
+	@Test
+	public void updatesOnlyChangedFieldsOfCachedDocuments() {
+		bulkMirroredObjectWriter.setMaxCachedDocumentsForDiffUpdates(10);
+		TestSpaceObject item = new TestSpaceObject("1", "hello");
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(new FakeBulkItem(item, DataSyncOperationType.WRITE)));
+		DocumentCollection collection = mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName());
+		// a field that is not written by the mirror is kept by an update of changed fields, but removed by a replace
+		collection.update(new Document(collection.findById("1")).append("external", true));
+
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(new FakeBulkItem(item, DataSyncOperationType.UPDATE)));
+		item.setMessage("updated");
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(new FakeBulkItem(item, DataSyncOperationType.UPDATE)));
+
+		Document persisted = collection.findById("1");
+		assertThat(persisted.getString("message"), is("updated"));
+		assertThat(persisted.getBoolean("external"), is(true));
+		// the update without changes is not written
+		assertThat(metrics.getNumUpdates(), is(1L));
+	}
+
+	@Test
+	public void replacesDocumentsMissingForUpdateOfChangedFields() {
+		bulkMirroredObjectWriter.setMaxCachedDocumentsForDiffUpdates(10);
+		TestSpaceObject item = new TestSpaceObject("1", "hello");
+		TestSpaceObject other = new TestSpaceObject("2", "hello");
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(
+				new FakeBulkItem(item, DataSyncOperationType.WRITE),
+				new FakeBulkItem(other, DataSyncOperationType.WRITE)));
+		DocumentCollection collection = mirror.getDocumentCollection(TEST_SPACE_OBJECT.collectionName());
+		collection.delete(collection.findById("1"));
+
+		item.setMessage("updated");
+		other.setMessage("updated");
+		bulkMirroredObjectWriter.executeBulk(testMetadata, FakeBatchData.create(
+				new FakeBulkItem(item, DataSyncOperationType.UPDATE),
+				new FakeBulkItem(other, DataSyncOperationType.UPDATE)));
+
+		assertThat(collection.findById("1").getString("message"), is("updated"));
+		assertThat(collection.findById("2").getString("message"), is("updated"));
+	}
+
 	private DocumentDb throwsOnUpdateDocumentDb() {
 		return DocumentDb.create((name, readPreference) -> new FakeDocumentCollection() {
 			@Override
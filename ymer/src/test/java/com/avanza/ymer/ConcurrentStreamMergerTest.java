@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ConcurrentStreamMergerTest {
+
+	@Test
+	public void shouldReturnElementsFromAllSources() {
+		List<Supplier<Stream<Integer>>> sources = List.of(
+				() -> IntStream.rangeClosed(1, 500).boxed(),
+				() -> IntStream.rangeClosed(501, 1000).boxed(),
+				Stream::empty,
+				() -> IntStream.rangeClosed(1001, 1500).boxed()
+		);
+
+		try (Stream<Integer> merged = ConcurrentStreamMerger.merge(sources, 2, 10, "test-")) {
+			assertThat(merged.collect(toList()), containsInAnyOrder(IntStream.rangeClosed(1, 1500).boxed().toArray()));
+		}
+	}
+
+	@Test
+	public void shouldConsumeAtMostParallelismSourcesAtTheSameTime() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		Supplier<Stream<Integer>> source = () -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			return IntStream.rangeClosed(1, 100).boxed()
+					.onClose(running::decrementAndGet);
+		};
+
+		try (Stream<Integer> merged = ConcurrentStreamMerger.merge(List.of(source, source, source, source, source), 2, 1, "test-")) {
+			assertThat(merged.count(), is(500L));
+		}
+		assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+	}
+
+	@Test
+	public void shouldCloseAllSourceStreams() {
+		LongAdder closed = new LongAdder();
+		Supplier<Stream<Integer>> source = () -> Stream.of(1, 2, 3).onClose(closed::increment);
+
+		try (Stream<Integer> merged = ConcurrentStreamMerger.merge(List.of(source, source, source), 3, 10, "test-")) {
+			assertThat(merged.count(), is(9L));
+		}
+		assertThat(closed.intValue(), is(3));
+	}
+
+	@Test
+	public void shouldRethrowFailureFromSource() {
+		List<Supplier<Stream<Integer>>> sources = List.of(
+				() -> IntStream.rangeClosed(1, 100).boxed(),
+				() -> Stream.of(1, 2).map(i -> {
+					throw new IllegalArgumentException("failed on " + i);
+				})
+		);
+
+		try (Stream<Integer> merged = ConcurrentStreamMerger.merge(sources, 2, 10, "test-")) {
+			IllegalStateException exception = assertThrows(IllegalStateException.class, merged::count);
+			assertThat(exception.getCause().getMessage(), is("failed on 1"));
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import com.mongodb.client.FindIterable;
+
+public class CursorProfileTest {
+
+	@SuppressWarnings("unchecked")
+	private final FindIterable<Document> iterable = mock(FindIterable.class);
+
+	@Test
+	public void appliesConfiguredOptionsToCursor() {
+		when(iterable.batchSize(5_000)).thenReturn(iterable);
+		when(iterable.maxTime(60_000, TimeUnit.MILLISECONDS)).thenReturn(iterable);
+		when(iterable.noCursorTimeout(true)).thenReturn(iterable);
+		CursorProfile cursorProfile = new CursorProfileDefinition()
+				.batchSize(5_000)
+				.maxTime(Duration.ofMinutes(1))
+				.noCursorTimeout(true)
+				.build();
+
+		cursorProfile.applyTo(iterable);
+
+		verify(iterable).batchSize(5_000);
+		verify(iterable).maxTime(60_000, TimeUnit.MILLISECONDS);
+		verify(iterable).noCursorTimeout(true);
+	}
+
+	@Test
+	public void defaultProfileUsesDriverDefaults() {
+		CursorProfile.DEFAULT.applyTo(iterable);
+
+		verifyNoInteractions(iterable);
+	}
+
+}
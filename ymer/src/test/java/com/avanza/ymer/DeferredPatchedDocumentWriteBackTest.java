@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static com.avanza.ymer.MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.avanza.ymer.plugin.PostReadProcessor;
+import com.avanza.ymer.plugin.PreWriteProcessor;
+
+public class DeferredPatchedDocumentWriteBackTest {
+
+	@Rule
+	public final TemporaryFolder spoolDirectory = new TemporaryFolder();
+
+	private final FakeDocumentCollection documentCollection = new FakeDocumentCollection();
+	private final PreWriteProcessor noOpPreWriteProcessor = document -> document;
+
+	@Test
+	public void writesBackSpooledDocumentsOnlyWhenStarted() {
+		Path spoolFile = spoolDirectory.getRoot().toPath().resolve("test.spool");
+		DeferredPatchedDocumentWriteBack writeBack = createWriteBack(spoolFile);
+		for (int id = 0; id < 25; id++) {
+			documentCollection.insert(new Document("_id", id));
+			writeBack.write(patch(new Document("_id", id)));
+		}
+		writeBack.complete();
+
+		assertThat(documentCollection.findById(0), is(new Document("_id", 0)));
+
+		writeBack.startWriteBack().join();
+
+		assertThat(writeBack.getNumWrittenDocuments(), is(25L));
+		assertThat(documentCollection.findAll().allMatch(document -> document.getBoolean("patched", false)), is(true));
+		assertThat(Files.exists(spoolFile), is(false));
+	}
+
+	@Test
+	public void skipsDocumentsThatWereChangedAfterTheyWerePatched() {
+		DeferredPatchedDocumentWriteBack writeBack = createWriteBack(spoolDirectory.getRoot().toPath().resolve("test.spool"));
+		documentCollection.insert(new Document("_id", 1));
+		writeBack.write(patch(new Document("_id", 1)));
+		writeBack.complete();
+		Document writtenByMirror = new Document("_id", 1).append(DOCUMENT_FORMAT_VERSION_PROPERTY, 2).append("value", "new");
+		documentCollection.update(writtenByMirror);
+
+		writeBack.startWriteBack().join();
+
+		assertThat(writeBack.getNumSkippedDocuments(), is(1L));
+		assertThat(documentCollection.findById(1), is(writtenByMirror));
+	}
+
+	@Test
+	public void writesBackDocumentsLeftInSpoolByEarlierRun() throws IOException {
+		Path spoolFile = spoolDirectory.getRoot().toPath().resolve("test.spool");
+		documentCollection.insert(new Document("_id", 1));
+		documentCollection.insert(new Document("_id", 2));
+		DeferredPatchedDocumentWriteBack earlierRun = createWriteBack(spoolFile);
+		earlierRun.write(patch(new Document("_id", 1)));
+		earlierRun.complete();
+		// A partially written entry, as left when the process is killed while spooling
+		Files.write(spoolFile, new byte[] { 42, 0, 0, 0, 1 }, StandardOpenOption.APPEND);
+
+		DeferredPatchedDocumentWriteBack writeBack = createWriteBack(spoolFile);
+		writeBack.write(patch(new Document("_id", 2)));
+		writeBack.complete();
+		writeBack.startWriteBack().join();
+
+		assertThat(writeBack.getNumWrittenDocuments(), is(2L));
+		assertThat(documentCollection.findById(1).getBoolean("patched"), is(true));
+		assertThat(documentCollection.findById(2).getBoolean("patched"), is(true));
+	}
+
+	@Test
+	public void replacesDocumentWhenIdIsChangedByPatch() {
+		DeferredPatchedDocumentWriteBack writeBack = createWriteBack(spoolDirectory.getRoot().toPath().resolve("test.spool"));
+		documentCollection.insert(new Document("_id", 1));
+		writeBack.write(new PatchedDocument(new Document("_id", 1), new Document("_id", "1").append(DOCUMENT_FORMAT_VERSION_PROPERTY, 2)));
+		writeBack.complete();
+
+		writeBack.startWriteBack().join();
+
+		assertThat(documentCollection.findAll().count(), is(1L));
+		assertThat(documentCollection.findById("1"), is(new Document("_id", "1").append(DOCUMENT_FORMAT_VERSION_PROPERTY, 2)));
+	}
+
+	@Test
+	public void spoolsDocumentsInTheFormTheyAreStoredInTheDatabase() throws IOException {
+		PreWriteProcessor encrypt = document -> document.append("secret", reverse(document.getString("secret")));
+		PostReadProcessor decrypt = document -> document.append("secret", reverse(document.getString("secret")));
+		Path spoolFile = spoolDirectory.getRoot().toPath().resolve("test.spool");
+		DeferredPatchedDocumentWriteBack writeBack = new DeferredPatchedDocumentWriteBack(documentCollection, encrypt, "test", new PatchedDocumentSpool(spoolFile), 1_000, 10);
+		Document stored = encrypt.preWrite(new Document("_id", 1).append("secret", "plaintext-secret"));
+		documentCollection.insert(stored);
+
+		writeBack.write(patch(decrypt.postRead(new Document(stored))));
+		writeBack.complete();
+
+		String spoolContent = new String(Files.readAllBytes(spoolFile), StandardCharsets.ISO_8859_1);
+		assertThat(spoolContent.contains("plaintext-secret"), is(false));
+		assertThat(spoolContent.contains(reverse("plaintext-secret")), is(true));
+
+		writeBack.startWriteBack().join();
+
+		assertThat(documentCollection.findById(1).getString("secret"), is(reverse("plaintext-secret")));
+		assertThat(documentCollection.findById(1).getBoolean("patched"), is(true));
+	}
+
+	private static String reverse(String value) {
+		return new StringBuilder(value).reverse().toString();
+	}
+
+	private DeferredPatchedDocumentWriteBack createWriteBack(Path spoolFile) {
+		return new DeferredPatchedDocumentWriteBack(documentCollection, noOpPreWriteProcessor, "test", new PatchedDocumentSpool(spoolFile), 1_000, 10);
+	}
+
+	private static PatchedDocument patch(Document oldVersion) {
+		Document newVersion = new Document(oldVersion)
+				.append(DOCUMENT_FORMAT_VERSION_PROPERTY, 2)
+				.append("patched", true);
+		return new PatchedDocument(oldVersion, newVersion);
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class DocumentDiffTest {
+
+	@Test
+	public void setsChangedAndAddedFieldsAndUnsetsRemovedFields() {
+		Document oldVersion = new Document("_id", 1)
+				.append("unchanged", "a")
+				.append("changed", 1)
+				.append("removed", true)
+				.append("values", List.of(1, 2));
+		Document newVersion = new Document("_id", 1)
+				.append("unchanged", "a")
+				.append("changed", 2L)
+				.append("added", "b")
+				.append("values", List.of(1, 2, 3));
+
+		DocumentDiff diff = DocumentDiff.between(oldVersion, newVersion);
+
+		assertThat(diff.getFieldsToSet(), is(Map.<String, Object>of("changed", 2L, "added", "b", "values", List.of(1, 2, 3))));
+		assertThat(diff.getFieldsToUnset(), contains("removed"));
+	}
+
+	@Test
+	public void comparesEmbeddedDocumentsFieldByField() {
+		Document oldVersion = new Document("_id", 1)
+				.append("nested", new Document("unchanged", 1).append("changed", 1).append("removed", 1));
+		Document newVersion = new Document("_id", 1)
+				.append("nested", new Document("unchanged", 1).append("changed", 2));
+
+		DocumentDiff diff = DocumentDiff.between(oldVersion, newVersion);
+
+		assertThat(diff.getFieldsToSet(), is(Map.<String, Object>of("nested.changed", 2)));
+		assertThat(diff.getFieldsToUnset(), contains("nested.removed"));
+	}
+
+	@Test
+	public void isEmptyForEqualDocuments() {
+		Document document = new Document("_id", 1).append("nested", new Document("value", 1));
+
+		assertThat(DocumentDiff.between(document, new Document(document)).isEmpty(), is(true));
+	}
+
+}
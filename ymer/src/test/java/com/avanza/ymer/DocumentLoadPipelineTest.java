@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class DocumentLoadPipelineTest {
+
+	@Test
+	public void shouldReturnProcessedDocumentsInSourceOrder() {
+		DocumentLoadPipeline<Document, Integer> pipeline = new DocumentLoadPipeline<>(
+				document -> Optional.of(document.getInteger("value"))
+						.filter(value -> value % 3 != 0),
+				new InitialLoadExecutor(4),
+				"test");
+
+		List<Integer> result;
+		try (Stream<Integer> processed = pipeline.process(documents(10_000))) {
+			result = processed.collect(toList());
+		}
+
+		assertThat(result, is(IntStream.range(0, 10_000)
+				.filter(value -> value % 3 != 0)
+				.boxed()
+				.collect(toList())));
+	}
+
+	@Test
+	public void shouldRethrowProcessingFailure() {
+		DocumentLoadPipeline<Document, Integer> pipeline = new DocumentLoadPipeline<>(document -> {
+			if (document.getInteger("value") == 512) {
+				throw new IllegalArgumentException("Could not convert " + document);
+			}
+			return Optional.of(document.getInteger("value"));
+		}, new InitialLoadExecutor(2), "test");
+
+		try (Stream<Integer> processed = pipeline.process(documents(1_000))) {
+			assertThrows(IllegalArgumentException.class, processed::count);
+		}
+	}
+
+	@Test(timeout = 10_000)
+	public void shouldRethrowErrorWhileReadingSource() {
+		DocumentLoadPipeline<Document, Integer> pipeline = new DocumentLoadPipeline<>(document -> Optional.of(document.getInteger("value")), new InitialLoadExecutor(2), "test");
+		Stream<Document> documents = documents(1_000).peek(document -> {
+			if (document.getInteger("value") == 512) {
+				throw new OutOfMemoryError("Could not read " + document);
+			}
+		});
+
+		try (Stream<Integer> processed = pipeline.process(documents)) {
+			assertThrows(OutOfMemoryError.class, processed::count);
+		}
+	}
+
+	@Test
+	public void shouldCloseSourceWhenClosed() {
+		AtomicBoolean sourceClosed = new AtomicBoolean();
+		DocumentLoadPipeline<Document, Integer> pipeline = new DocumentLoadPipeline<>(document -> Optional.of(document.getInteger("value")), new InitialLoadExecutor(2), "test");
+
+		try (Stream<Integer> processed = pipeline.process(documents(1_000).onClose(() -> sourceClosed.set(true)))) {
+			assertThat(processed.count(), is(1_000L));
+		}
+
+		assertThat(sourceClosed.get(), is(true));
+	}
+
+	private static Stream<Document> documents(int count) {
+		return IntStream.range(0, count).mapToObj(value -> new Document("value", value));
+	}
+
+}
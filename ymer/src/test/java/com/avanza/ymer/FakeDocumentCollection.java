@@ -23,17 +23,21 @@ import static org.springframework.data.domain.Sort.Direction.ASC;
 import static org.springframework.data.domain.Sort.Direction.DESC;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -42,6 +46,8 @@ import javax.annotation.Nullable;
 
 import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.index.IndexField;
 import org.springframework.data.mongodb.core.index.IndexInfo;
@@ -63,6 +69,7 @@ class FakeDocumentCollection implements DocumentCollection {
 	private final ConcurrentLinkedQueue<Document> collection = new ConcurrentLinkedQueue<>();
 	private final Set<IndexInfo> indexes = ConcurrentHashMap.newKeySet();
 	private final AtomicInteger idGenerator = new AtomicInteger(0);
+	private final List<Object> changedIds = Collections.synchronizedList(new ArrayList<>());
 
 	private Supplier<RuntimeException> mockedBulkException;
 
@@ -76,12 +83,24 @@ class FakeDocumentCollection implements DocumentCollection {
 
 	@Override
 	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter)  {
-		return new ArrayList<>(collection).stream();
+		return findAll();
+	}
+
+	@Override
+	public Stream<Document> findAll(SpaceObjectFilter<?> objectFilter, Document idRange) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public List<Document> splitIdRanges(int numRanges) {
+		return singletonList(new Document());
 	}
 
 	@Override
 	public Stream<Document> findAll()  {
-		return new ArrayList<>(collection).stream();
+		// Documents are copied, like when read from a database, as the loader may mutate the returned documents
+		return new ArrayList<>(collection).stream()
+				.map(Document::new);
 	}
 
 	@Override
@@ -91,6 +110,8 @@ class FakeDocumentCollection implements DocumentCollection {
 		// that are inserted/updated after the cursor is created.
 		collection.remove(oldVersion);
 		collection.add(newVersion);
+		changedIds.add(oldVersion.get("_id"));
+		changedIds.add(newVersion.get("_id"));
 	}
 
 	@Override
@@ -101,6 +122,7 @@ class FakeDocumentCollection implements DocumentCollection {
 			if (document.get("_id").equals(newVersion.get("_id"))) {
 				it.remove();
 				collection.add(newVersion);
+				changedIds.add(newVersion.get("_id"));
 				return;
 			}
 		}
@@ -110,15 +132,15 @@ class FakeDocumentCollection implements DocumentCollection {
 
 	@Override
 	public BulkWriteResult nonOrderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
-		return mockedBulkWrite(bulkWriter);
+		return mockedBulkWrite(bulkWriter, false);
 	}
 
 	@Override
 	public BulkWriteResult orderedBulkWrite(Consumer<BulkWriter> bulkWriter) {
-		return mockedBulkWrite(bulkWriter);
+		return mockedBulkWrite(bulkWriter, true);
 	}
 
-	private BulkWriteResult mockedBulkWrite(Consumer<BulkWriter> bulkWriter) {
+	private BulkWriteResult mockedBulkWrite(Consumer<BulkWriter> bulkWriter, boolean ordered) {
 		if (mockedBulkException != null) {
 			throw mockedBulkException.get();
 		}
@@ -129,35 +151,59 @@ class FakeDocumentCollection implements DocumentCollection {
 		LongAdder index = new LongAdder();
 
 		Supplier<BulkWriteResult> bulkResult = () -> BulkWriteResult.acknowledged(inserts.intValue(), updates.intValue(), deletes.intValue(), updates.intValue(), emptyList(), emptyList());
-		AtomicReference<MongoBulkWriteException> bulkWriteException = new AtomicReference<>(null);
+		List<BulkWriteError> writeErrors = new ArrayList<>();
+		// an ordered bulk write stops at the first error, a non-ordered one continues with the remaining operations
+		BooleanSupplier stopped = () -> ordered && !writeErrors.isEmpty();
 
 		bulkWriter.accept(new BulkWriter() {
 			@Override
 			public void insert(Document document) {
-				if (bulkWriteException.get() == null) {
+				if (!stopped.getAsBoolean()) {
 					try {
 						FakeDocumentCollection.this.insert(document);
-						index.increment();
 						inserts.increment();
 					} catch (DuplicateDocumentKeyException e) {
-						bulkWriteException.set(new MongoBulkWriteException(bulkResult.get(), List.of(new BulkWriteError(0, e.getMessage(), new BsonDocument(), index.intValue())),
-								null, new ServerAddress("localhost"), emptySet()));
+						writeErrors.add(new BulkWriteError(0, e.getMessage(), new BsonDocument(), index.intValue()));
 					}
+					index.increment();
 				}
 			}
 
 			@Override
 			public void replace(Document document) {
-				if (bulkWriteException.get() == null) {
+				if (!stopped.getAsBoolean()) {
 					FakeDocumentCollection.this.update(document);
 					index.increment();
 					updates.increment();
 				}
 			}
 
+			@Override
+			public void replaceExisting(Document document) {
+				if (!stopped.getAsBoolean()) {
+					if (findById(document.get("_id")) != null) {
+						FakeDocumentCollection.this.update(document);
+						updates.increment();
+					}
+					index.increment();
+				}
+			}
+
+			@Override
+			public void replaceIfFormatVersion(Document document, int formatVersion) {
+				if (!stopped.getAsBoolean()) {
+					Document current = findById(document.get("_id"));
+					if (current != null && current.getInteger(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, 1) == formatVersion) {
+						FakeDocumentCollection.this.update(document);
+						updates.increment();
+					}
+					index.increment();
+				}
+			}
+
 			@Override
 			public void delete(Document document) {
-				if (bulkWriteException.get() == null) {
+				if (!stopped.getAsBoolean()) {
 					FakeDocumentCollection.this.removeById(document);
 					index.increment();
 					deletes.increment();
@@ -166,7 +212,7 @@ class FakeDocumentCollection implements DocumentCollection {
 
 			@Override
 			public void updatePartialByIds(Set<Object> ids, Map<String, Object> fieldsToSet) {
-				if (bulkWriteException.get() == null) {
+				if (!stopped.getAsBoolean()) {
 					ids.stream()
 							.map(document -> findById(document))
 							.filter(Objects::nonNull)
@@ -180,7 +226,7 @@ class FakeDocumentCollection implements DocumentCollection {
 
 			@Override
 			public void unsetFieldsPartialByIds(Set<Object> ids, Set<String> fieldsToUnset) {
-				if (bulkWriteException.get() == null) {
+				if (!stopped.getAsBoolean()) {
 					ids.stream()
 							.map(document -> findById(document))
 							.filter(Objects::nonNull)
@@ -191,10 +237,29 @@ class FakeDocumentCollection implements DocumentCollection {
 							});
 				}
 			}
+
+			@Override
+			public void updateFields(Object id, Map<String, Object> fieldsToSet, Set<String> fieldsToUnset) {
+				if (!stopped.getAsBoolean()) {
+					Document document = findById(id);
+					if (document != null) {
+						fieldsToSet.forEach((path, value) -> parentOf(document, path, true).put(lastSegment(path), value));
+						fieldsToUnset.forEach(path -> {
+							Document parent = parentOf(document, path, false);
+							if (parent != null) {
+								parent.remove(lastSegment(path));
+							}
+						});
+						FakeDocumentCollection.this.update(document);
+						updates.increment();
+					}
+					index.increment();
+				}
+			}
 		});
 
-		if (bulkWriteException.get() != null) {
-			throw bulkWriteException.get();
+		if (!writeErrors.isEmpty()) {
+			throw new MongoBulkWriteException(bulkResult.get(), writeErrors, null, new ServerAddress("localhost"), emptySet());
 		} else {
 			return bulkResult.get();
 		}
@@ -211,6 +276,7 @@ class FakeDocumentCollection implements DocumentCollection {
 			document.put("_id", "testid_" + idGenerator.incrementAndGet());
 		}
 		collection.add(document);
+		changedIds.add(document.get("_id"));
 	}
 
 	@Override
@@ -230,6 +296,7 @@ class FakeDocumentCollection implements DocumentCollection {
 			Document next = it.next();
 			if (next.equals(document)) {
 				it.remove();
+				changedIds.add(next.get("_id"));
 				return;
 			}
 		}
@@ -241,6 +308,7 @@ class FakeDocumentCollection implements DocumentCollection {
 			Document next = it.next();
 			if (next.get("_id").equals(document.get("_id"))) {
 				it.remove();
+				changedIds.add(next.get("_id"));
 				return;
 			}
 		}
@@ -253,11 +321,34 @@ class FakeDocumentCollection implements DocumentCollection {
 		}
 	}
 
+	@Nullable
+	private static Document parentOf(Document document, String path, boolean create) {
+		Document parent = document;
+		String[] segments = path.split("\\.");
+		for (int i = 0; i < segments.length - 1 && parent != null; i++) {
+			Object child = parent.get(segments[i]);
+			if (child instanceof Document) {
+				// copied, so that documents held by the caller are not changed
+				child = new Document((Document) child);
+				parent.put(segments[i], child);
+			} else if (child == null && create) {
+				child = new Document();
+				parent.put(segments[i], child);
+			}
+			parent = child instanceof Document ? (Document) child : null;
+		}
+		return parent;
+	}
+
+	private static String lastSegment(String path) {
+		return path.substring(path.lastIndexOf('.') + 1);
+	}
+
 	@Override
 	public Document findById(Object id) {
 		for (Document next : collection) {
 			if (next.get("_id").equals(id)) {
-				return next;
+				return new Document(next);
 			}
 		}
 		return null;
@@ -268,11 +359,54 @@ class FakeDocumentCollection implements DocumentCollection {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Optional<Document> explain(Query query) {
+		return Optional.empty();
+	}
+
+	@Override
+	public Stream<Document> findByIds(Collection<Object> ids) {
+		return new ArrayList<>(collection).stream()
+				.filter(document -> ids.contains(document.get("_id")))
+				.map(Document::new);
+	}
+
+	@Override
+	public OptionalLong getDataSize() {
+		return OptionalLong.of(collection.stream()
+				.mapToLong(document -> document.toJson().length())
+				.sum());
+	}
+
+	@Override
+	public Optional<Document> getChangeStreamPosition() {
+		return Optional.of(new Document("position", changedIds.size()));
+	}
+
+	@Override
+	public Optional<Set<Object>> findIdsChangedSince(Document position, int maxChanges) {
+		Set<Object> ids;
+		synchronized (changedIds) {
+			ids = new HashSet<>(changedIds.subList(position.getInteger("position"), changedIds.size()));
+		}
+		return ids.size() > maxChanges ? Optional.empty() : Optional.of(ids);
+	}
+
 	@Override
 	public Stream<Document> findByTemplate(Document template) {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Stream<RawDocument> findRawByTemplate(Document template) {
+		if (!template.isEmpty()) {
+			throw new UnsupportedOperationException();
+		}
+		DocumentCodec codec = new DocumentCodec();
+		return new ArrayList<>(collection).stream()
+				.map(document -> new RawDocument(new RawBsonDocument(document, codec), codec));
+	}
+
 	@Override
 	public Stream<IndexInfo> getIndexes() {
 		return indexes.stream();
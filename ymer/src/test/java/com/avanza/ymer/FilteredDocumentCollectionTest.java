@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+public class FilteredDocumentCollectionTest {
+
+	private final DocumentCollection delegate = mock(DocumentCollection.class);
+	private final Document filter = new Document("active", true);
+	private final FilteredDocumentCollection target = new FilteredDocumentCollection(delegate, filter);
+
+	@Test
+	public void readsAllDocumentsMatchingFilter() {
+		when(delegate.findByTemplate(any())).thenReturn(Stream.empty());
+
+		target.findAll().close();
+
+		verify(delegate).findByTemplate(filter);
+	}
+
+	@Test
+	public void combinesFilterWithTemplate() {
+		when(delegate.findRawByTemplate(any())).thenReturn(Stream.empty());
+
+		target.findRawByTemplate(new Document("name", "a")).close();
+
+		verify(delegate).findRawByTemplate(new Document("$and", List.of(filter, new Document("name", "a"))));
+	}
+
+	@Test
+	public void combinesFilterWithQueryAndKeepsProjectionAndSort() {
+		when(delegate.findByQuery(any())).thenReturn(Stream.empty());
+
+		target.findByQuery(new BasicQuery(new Document("name", "a"), new Document("history", 0)).with(Sort.by("_id"))).close();
+
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		verify(delegate).findByQuery(query.capture());
+		assertEquals(new Document("$and", List.of(filter, new Document("name", "a"))), query.getValue().getQueryObject());
+		assertEquals(new Document("history", 0), query.getValue().getFieldsObject());
+		assertEquals(new Document("_id", 1), query.getValue().getSortObject());
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class InitialLoadExecutorTest {
+
+	@Test
+	public void shouldRejectNonPositivePoolSize() {
+		assertThrows(IllegalArgumentException.class, () -> new InitialLoadExecutor(0));
+	}
+
+	@Test
+	public void shouldRunTasksOnNamedWorkerThreads() {
+		InitialLoadExecutor executor = new InitialLoadExecutor(2);
+
+		String threadName = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor).join();
+
+		assertThat(threadName, startsWith("Ymer-Initial-Load-Worker-"));
+	}
+
+	@Test
+	public void shouldCountDocumentsProcessedByAllPipelines() {
+		InitialLoadExecutor executor = new InitialLoadExecutor(2);
+
+		for (int i = 0; i < 3; i++) {
+			DocumentLoadPipeline<Document, Integer> pipeline = new DocumentLoadPipeline<>(document -> Optional.of(document.getInteger("value")), executor, "test-" + i);
+			try (Stream<Integer> processed = pipeline.process(IntStream.range(0, 1_000).mapToObj(value -> new Document("value", value)))) {
+				assertThat(processed.count(), is(1_000L));
+			}
+		}
+
+		assertThat(executor.getNumProcessedDocuments(), is(3_000L));
+		assertThat(executor.getPoolSize(), is(2));
+	}
+
+}
@@ -20,16 +20,23 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.bson.Document;
 import org.junit.After;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.data.mongodb.core.query.Query;
 
 import com.avanza.ymer.MirroredObjectLoader.LoadedDocument;
@@ -42,6 +49,9 @@ public class MirroredObjectLoaderTest {
 	@ClassRule
 	public static final MirrorEnvironment mirrorEnvironment = new MirrorEnvironment();
 
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private final MirrorContextProperties contextProperties = new MirrorContextProperties(2, 2);
 
 	private final DocumentCollection documentCollection = new MongoDocumentCollection(mirrorEnvironment.getMongoTemplate().getCollection("document-collection"));
@@ -122,13 +132,17 @@ public class MirroredObjectLoaderTest {
 
 		documentCollection.insertAll(doc1, doc2, doc3, doc4);
 
+		InitialLoadStatistics statistics = new InitialLoadStatistics();
 		MirroredObjectLoader<FakeSpaceObject> documentLoader = new MirroredObjectLoader<>(
 				documentCollection,
 				FakeMirroredDocumentConverter.create(),
 				mirroredObject,
 				SpaceObjectFilter.partitionFilter(mirroredObject, contextProperties.getInstanceId(), contextProperties.getPartitionCount()),
 				contextProperties,
-				noOpPostReadProcessor());
+				noOpPostReadProcessor(),
+				new InitialLoadExecutor(2),
+				new InitialLoadCheckpoints(),
+				statistics);
 
 		List<FakeSpaceObject> loadedSpaceObjects = documentLoader.streamAllObjects()
 				.map(LoadedDocument::getDocument)
@@ -137,6 +151,7 @@ public class MirroredObjectLoaderTest {
 				new FakeSpaceObject(3, 2, false),
 				new FakeSpaceObject(5, 2, false)
 		));
+		assertEquals(0, statistics.getNumCollectionScans());
 	}
 
 	@Test
@@ -171,6 +186,29 @@ public class MirroredObjectLoaderTest {
 		assertEquals(mirroredObject.patch(doc2), patchedDocuments.get(0).getNewVersion());
 	}
 
+	@Test
+	public void recordsStatisticsOfInitialLoad() {
+		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class).documentPatches(patches).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+
+		Document doc1 = new Document("_id", 11);
+		Document doc2 = new Document("_id", 22);
+		Document doc3 = new Document("_id", 33).append("patched", false);
+		mirroredObject.setDocumentVersion(doc3, mirroredObject.getCurrentVersion());
+		documentCollection.insertAll(doc1, doc2, doc3);
+
+		InitialLoadStatistics statistics = new InitialLoadStatistics();
+		MirroredObjectLoader<FakeSpaceObject> documentLoader = new MirroredObjectLoader<>(documentCollection, FakeMirroredDocumentConverter.create(), mirroredObject,
+				SpaceObjectFilter.create(spaceObject -> spaceObject.getId() != 11), contextProperties, noOpPostReadProcessor(),
+				new InitialLoadExecutor(2), new InitialLoadCheckpoints(), statistics);
+		documentLoader.loadAllObjects();
+
+		assertEquals(3, statistics.getNumDocuments());
+		assertEquals(2, statistics.getNumPatched());
+		assertEquals(1, statistics.getNumRejected());
+		assertEquals(0, statistics.getNumWrittenBack());
+	}
+
 	@Test
 	public void loadsAndPatchesADocumentById() throws Exception {
 		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
@@ -286,6 +324,161 @@ public class MirroredObjectLoaderTest {
 		assertThrows(RuntimeException.class, () -> documentLoader.loadById(doc3.get("_id")));
 	}
 
+	@Test
+	public void convertsLoadedDocumentsWithoutCopyingThemUnlessNeededForWriteBack() {
+		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
+		Document upToDate = new Document("_id", 11);
+		Document requiresPatching = new Document("_id", 22);
+		List<Document> convertedDocuments = new CopyOnWriteArrayList<>();
+		DocumentConverter converter = DocumentConverter.create(new FakeMirroredDocumentConverter() {
+			@Override
+			public <T> T convert(Class<T> toType, Document document) {
+				convertedDocuments.add(document);
+				return super.convert(toType, document);
+			}
+		});
+
+		MirroredObject<FakeSpaceObject> withoutWriteBack = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.documentPatches(patches)
+				.writeBackPatchedDocuments(false)
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		withoutWriteBack.setDocumentVersion(upToDate, withoutWriteBack.getCurrentVersion());
+		List<LoadedDocument<FakeSpaceObject>> loadedDocuments = new MirroredObjectLoader<>(documentsReadAsIs(upToDate, requiresPatching), converter, withoutWriteBack, SpaceObjectFilter.acceptAll(), contextProperties, noOpPostReadProcessor())
+				.loadAllObjects();
+
+		assertEquals(2, loadedDocuments.size());
+		assertSame(upToDate, convertedDocuments.get(0));
+		assertSame(requiresPatching, convertedDocuments.get(1));
+		assertFalse(loadedDocuments.get(1).getPatchedDocument().isPresent());
+
+		Document notYetPatched = new Document("_id", 33);
+		MirroredObject<FakeSpaceObject> withWriteBack = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.documentPatches(patches)
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		PatchedDocument patchedDocument = new MirroredObjectLoader<>(documentsReadAsIs(notYetPatched), converter, withWriteBack, SpaceObjectFilter.acceptAll(), contextProperties, noOpPostReadProcessor())
+				.loadAllObjects().get(0)
+				.getPatchedDocument().orElseThrow();
+
+		assertSame(notYetPatched, patchedDocument.getOldVersion());
+		assertNotSame(notYetPatched, patchedDocument.getNewVersion());
+		assertFalse(notYetPatched.containsKey("patched"));
+	}
+
+	@Test
+	public void decodesOnlyRawDocumentsRoutedToCurrentPartition() {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.documentPatches(new FakeSpaceObjectV1Patch())
+				.readRawDocuments(true)
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		FakeDocumentCollection fakeDocumentCollection = new FakeDocumentCollection();
+		for (int id = 1; id <= 10; id++) {
+			Document document = new Document("_id", id).append("patched", true);
+			mirroredObject.setDocumentVersion(document, mirroredObject.getCurrentVersion());
+			fakeDocumentCollection.insert(document);
+		}
+		fakeDocumentCollection.insert(new Document("_id", 12));
+		List<Object> convertedIds = new CopyOnWriteArrayList<>();
+		DocumentConverter converter = DocumentConverter.create(new FakeMirroredDocumentConverter() {
+			@Override
+			public <T> T convert(Class<T> toType, Document document) {
+				convertedIds.add(document.get("_id"));
+				return super.convert(toType, document);
+			}
+		});
+
+		List<FakeSpaceObject> loadedSpaceObjects = new MirroredObjectLoader<>(fakeDocumentCollection, converter, mirroredObject, SpaceObjectFilter.partitionFilter(mirroredObject, 2, 2), contextProperties, noOpPostReadProcessor())
+				.loadAllObjects().stream()
+				.map(LoadedDocument::getDocument)
+				.collect(toList());
+
+		assertEquals(List.of(1, 3, 5, 7, 9), loadedSpaceObjects.stream().map(FakeSpaceObject::getId).collect(toList()));
+		// Documents that require patching are always decoded and converted
+		assertEquals(List.of(1, 3, 5, 7, 9, 12), convertedIds);
+	}
+
+	@Test
+	public void readsUnchangedDocumentsFromSnapshotAndChangedDocumentsFromDatabase() {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.documentPatches(new FakeSpaceObjectV1Patch())
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		AtomicInteger numFullReads = new AtomicInteger();
+		FakeDocumentCollection fakeDocumentCollection = new FakeDocumentCollection() {
+			@Override
+			public Stream<Document> findAll() {
+				numFullReads.incrementAndGet();
+				return super.findAll();
+			}
+		};
+		for (int id = 1; id <= 4; id++) {
+			Document document = new Document("_id", id).append("patched", true);
+			mirroredObject.setDocumentVersion(document, mirroredObject.getCurrentVersion());
+			fakeDocumentCollection.insert(document);
+		}
+		DocumentSnapshot snapshot = new DocumentSnapshot(temporaryFolder.getRoot().toPath().resolve("document-collection.snapshot"));
+		MirroredObjectLoader<FakeSpaceObject> documentLoader = new MirroredObjectLoader<>(fakeDocumentCollection, FakeMirroredDocumentConverter.create(), mirroredObject, SpaceObjectFilter.acceptAll(), contextProperties, noOpPostReadProcessor());
+
+		assertEquals(List.of(1, 2, 3, 4), loadIds(documentLoader.streamAllObjects(snapshot)));
+
+		Document changed = new Document("_id", 2).append("patched", false);
+		mirroredObject.setDocumentVersion(changed, mirroredObject.getCurrentVersion());
+		fakeDocumentCollection.update(changed);
+		fakeDocumentCollection.delete(new Document("_id", 3));
+		Document inserted = new Document("_id", 5).append("patched", true);
+		mirroredObject.setDocumentVersion(inserted, mirroredObject.getCurrentVersion());
+		fakeDocumentCollection.insert(inserted);
+		List<LoadedDocument<FakeSpaceObject>> reloaded;
+		try (Stream<LoadedDocument<FakeSpaceObject>> loadedDocuments = documentLoader.streamAllObjects(snapshot)) {
+			reloaded = loadedDocuments.collect(toList());
+		}
+
+		assertEquals(1, numFullReads.get());
+		assertThat(reloaded.stream().map(LoadedDocument::getDocument).collect(toList()), containsInAnyOrder(
+				new FakeSpaceObject(1, 1, true), new FakeSpaceObject(2, 1, false), new FakeSpaceObject(4, 1, true), new FakeSpaceObject(5, 1, true)));
+		// The snapshot written by the second load is used by the next load
+		assertEquals(List.of(1, 2, 4, 5), loadIds(documentLoader.streamAllObjects(snapshot)));
+		assertEquals(1, numFullReads.get());
+	}
+
+	@Test
+	public void readsAllDocumentsFromDatabaseWhenSnapshotWasWrittenByOtherPartition() {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.documentPatches(new FakeSpaceObjectV1Patch())
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		AtomicInteger numFullReads = new AtomicInteger();
+		FakeDocumentCollection fakeDocumentCollection = new FakeDocumentCollection() {
+			@Override
+			public Stream<Document> findAll() {
+				numFullReads.incrementAndGet();
+				return super.findAll();
+			}
+		};
+		fakeDocumentCollection.insert(new Document("_id", 1));
+		DocumentSnapshot snapshot = new DocumentSnapshot(temporaryFolder.getRoot().toPath().resolve("document-collection.snapshot"));
+		loadIds(new MirroredObjectLoader<>(fakeDocumentCollection, FakeMirroredDocumentConverter.create(), mirroredObject, SpaceObjectFilter.acceptAll(), new MirrorContextProperties(2, 1), noOpPostReadProcessor())
+				.streamAllObjects(snapshot));
+
+		assertEquals(List.of(1), loadIds(new MirroredObjectLoader<>(fakeDocumentCollection, FakeMirroredDocumentConverter.create(), mirroredObject, SpaceObjectFilter.acceptAll(), contextProperties, noOpPostReadProcessor())
+				.streamAllObjects(snapshot)));
+		assertEquals(2, numFullReads.get());
+	}
+
+	private static List<Integer> loadIds(Stream<LoadedDocument<FakeSpaceObject>> loadedDocuments) {
+		try (loadedDocuments) {
+			return loadedDocuments.map(loadedDocument -> loadedDocument.getDocument().getId())
+					.sorted()
+					.collect(toList());
+		}
+	}
+
+	private static DocumentCollection documentsReadAsIs(Document... documents) {
+		return new FakeDocumentCollection() {
+			@Override
+			public Stream<Document> findAll() {
+				return Stream.of(documents);
+			}
+		};
+	}
+
 	private static class FakeSpaceObject implements ReloadableSpaceObject {
 
 		private int id;
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -131,6 +132,65 @@ public class MirroredObjectTest {
 		assertEquals(21, mirroredObject.getRoutingKey(new SpaceObject()));
 	}
 
+	@Test
+	public void readsRoutingKeyHashCodeFromDocument() throws Exception {
+		class SpaceObject {
+			@SpaceRouting
+			public String routing() {
+				return "routing";
+			}
+
+			@SpaceId
+			public Integer id() {
+				return 19;
+			}
+		}
+		MirroredObject<SpaceObject> mirroredObject = MirroredObjectDefinition.create(SpaceObject.class).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+
+		Document document = new Document("_id", 19).append(MirroredObject.DOCUMENT_ROUTING_KEY, "routing".hashCode());
+
+		assertEquals(Optional.of("routing".hashCode()), mirroredObject.getRoutingKeyFromDocument(document));
+		assertEquals(Optional.empty(), mirroredObject.getRoutingKeyFromDocument(new Document("_id", 19)));
+	}
+
+	@Test
+	public void readsRoutingKeyFromIdOfDocumentOnCurrentVersionWhenRoutedBySpaceId() throws Exception {
+		class SpaceObject {
+			@SpaceId
+			public long id() {
+				return 21;
+			}
+		}
+		BsonDocumentPatch[] patches = { new FakePatch(1) };
+		MirroredObject<SpaceObject> mirroredObject = MirroredObjectDefinition.create(SpaceObject.class).documentPatches(patches).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+
+		Document currentVersion = new Document("_id", 21L);
+		mirroredObject.setDocumentVersion(currentVersion, mirroredObject.getCurrentVersion());
+		Document oldVersion = new Document("_id", 21L);
+		Document otherIdType = new Document("_id", "21");
+		mirroredObject.setDocumentVersion(otherIdType, mirroredObject.getCurrentVersion());
+
+		assertEquals(Optional.of(21L), mirroredObject.getRoutingKeyFromDocument(currentVersion));
+		assertEquals(Optional.empty(), mirroredObject.getRoutingKeyFromDocument(oldVersion));
+		assertEquals(Optional.empty(), mirroredObject.getRoutingKeyFromDocument(otherIdType));
+	}
+
+	@Test
+	public void partitionFilterRejectsDocumentsRoutedToOtherPartitions() throws Exception {
+		class SpaceObject {
+			@SpaceId
+			public Integer id() {
+				return 1;
+			}
+		}
+		MirroredObject<SpaceObject> mirroredObject = MirroredObjectDefinition.create(SpaceObject.class).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		SpaceObjectFilter<SpaceObject> filter = SpaceObjectFilter.partitionFilter(mirroredObject, 2, 2);
+
+		assertTrue(filter.mayAccept(new Document("_id", 1)));
+		assertFalse(filter.mayAccept(new Document("_id", 2)));
+		assertTrue(filter.mayAccept(new Document("_id", "2")));
+		assertTrue(SpaceObjectFilter.<SpaceObject>acceptAll().mayAccept(new Document("_id", 2)));
+	}
 
 	@Test
 	public void patchesAreAppliedInCorrectOrder() throws Exception {
@@ -341,6 +401,16 @@ public class MirroredObjectTest {
 		assertEquals("bananskal".hashCode(), dbObject.get(MirroredObject.DOCUMENT_ROUTING_KEY));
 	}
 
+	@Test
+	public void setsRoutingKeyAndBucketForVirtualBuckets() throws Exception {
+		MirroredObject<RoutedType> document = MirroredObjectDefinition.create(RoutedType.class).loadDocumentsInVirtualBuckets(5040).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		Document dbObject = new Document();
+
+		document.setDocumentAttributes(dbObject, new RoutedType(23, "bananskal"), null);
+		assertEquals("bananskal".hashCode(), dbObject.get(MirroredObject.DOCUMENT_ROUTING_KEY));
+		assertEquals(VirtualBuckets.getBucket("bananskal", 5040), dbObject.get(MirroredObject.DOCUMENT_BUCKET));
+	}
+
 	@Test
 	public void setsInstanceIdAndRoutingKeyForPersistInstanceId() throws Exception {
 		MirroredObject<MirroredType> document = MirroredObjectDefinition.create(MirroredType.class)
@@ -397,6 +467,13 @@ public class MirroredObjectTest {
 		assertEquals(2, dbObject.get(getInstanceIdFieldName(2)));
 	}
 
+	@Test
+	public void rejectsHotInitialLoadTemplateForTypesThatAreNotReloadable() {
+		MirroredObjectDefinition<RoutedType> definition = MirroredObjectDefinition.create(RoutedType.class);
+
+		assertThrows(IllegalArgumentException.class, () -> definition.hotInitialLoadTemplateFactory((partitionCount, instanceId) -> new Document("hot", true)));
+	}
+
 	@Test
 	public void canOverrideDefinition() throws Exception {
 		MirroredObjectDefinition<RoutedType> definition = MirroredObjectDefinition.create(RoutedType.class)
@@ -421,6 +498,24 @@ public class MirroredObjectTest {
 		assertFalse(definition.buildMirroredDocument(fromSystemProperties()).persistInstanceId());
 	}
 
+	@Test
+	public void doesNotWriteBackPatchedDocumentsWhenFieldsAreExcludedFromLoad() throws Exception {
+		MirroredObject<RoutedType> mirroredObject = MirroredObjectDefinition.create(RoutedType.class)
+				.writeBackPatchedDocuments(true)
+				.excludeFieldsFromLoad("history")
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+
+		assertFalse(mirroredObject.writeBackPatchedDocuments());
+		assertEquals(new Document("history", 0), mirroredObject.getLoadProjection());
+	}
+
+	@Test
+	public void cannotExcludeRoutingFieldsFromLoad() throws Exception {
+		MirroredObjectDefinition<RoutedType> definition = MirroredObjectDefinition.create(RoutedType.class);
+
+		assertThrows(IllegalArgumentException.class, () -> definition.excludeFieldsFromLoad(MirroredObject.DOCUMENT_ROUTING_KEY));
+	}
+
 	private static void assertNoInstanceIdFieldsAreSet(Document document) {
 		Set<String> fields = document.keySet().stream().filter(it -> it.startsWith(MirroredObject.DOCUMENT_INSTANCE_ID_PREFIX)).collect(Collectors.toSet());
 		assertTrue("Expected no instance id fields to exist, but found " + fields, fields.isEmpty());
@@ -18,16 +18,19 @@ package com.avanza.ymer;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.bson.Document;
 import org.junit.After;
@@ -187,6 +190,52 @@ public class MongoDocumentCollectionTest extends DocumentCollectionContract {
 		assertThat(results, contains(samePropertyValuesAs(d1)));
 	}
 
+	@Test
+	public void idRangesCoverAllDocumentsExactlyOnce() {
+		DocumentCollection documentCollection = createEmptyCollection();
+		documentCollection.insertAll(IntStream.range(0, 1_000)
+				.mapToObj(id -> new Document("_id", id))
+				.toArray(Document[]::new));
+		documentCollection.insertAll(new Document("_id", 1_000L), new Document("_id", "a-string-id"));
+
+		List<Document> idRanges = documentCollection.splitIdRanges(4);
+		List<Object> ids = idRanges.stream()
+				.flatMap(documentCollection::findByTemplate)
+				.map(document -> document.get("_id"))
+				.collect(toList());
+
+		assertThat(idRanges.size(), greaterThan(2));
+		assertEquals(1_002, ids.size());
+		assertEquals(1_002, new HashSet<>(ids).size());
+	}
+
+	@Test
+	public void canLoadDocumentsInIdRanges() {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class)
+				.loadDocumentsInIdRanges(4)
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentCollection documentCollection = createEmptyCollection();
+		documentCollection.insertAll(IntStream.range(0, 1_000)
+				.mapToObj(id -> new Document("_id", id).append("value", "v" + id))
+				.toArray(Document[]::new));
+
+		MirroredObjectLoader<FakeSpaceObject> documentLoader = new MirroredObjectLoader<>(
+				documentCollection,
+				FakeMirroredDocumentConverter.create(),
+				mirroredObject,
+				SpaceObjectFilter.acceptAll(),
+				new MirrorContextProperties(1, 1),
+				noOpPostReadProcessor());
+
+		List<FakeSpaceObject> loadedSpaceObjects = documentLoader.loadAllObjects()
+				.stream()
+				.map(LoadedDocument::getDocument)
+				.collect(Collectors.toList());
+
+		assertEquals(1_000, loadedSpaceObjects.size());
+		assertTrue(loadedSpaceObjects.contains(new FakeSpaceObject(999, "v999")));
+	}
+
 	static class FakeSpaceObject {
 		private final Integer id;
 		private final String value;
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import com.avanza.ymer.plugin.PreWriteProcessor;
+
+public class PatchedDocumentWriteBackTest {
+
+	private final FakeDocumentCollection documentCollection = new FakeDocumentCollection();
+	private final PreWriteProcessor noOpPreWriteProcessor = document -> document;
+
+	@Test
+	public void writesAllPatchedDocumentsInBatches() {
+		for (int id = 0; id < 1_050; id++) {
+			documentCollection.insert(new Document("_id", id));
+		}
+		PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(documentCollection, noOpPreWriteProcessor, "test", 100, 10);
+
+		for (int id = 0; id < 1_050; id++) {
+			writeBack.write(new PatchedDocument(new Document("_id", id), new Document("_id", id).append("patched", true)));
+		}
+		writeBack.awaitCompletion();
+
+		assertThat(writeBack.getNumWrittenDocuments(), is(1_050L));
+		assertThat(documentCollection.findAll().allMatch(document -> document.getBoolean("patched", false)), is(true));
+	}
+
+	@Test
+	public void removesOldVersionWhenIdIsChangedByPatch() {
+		documentCollection.insert(new Document("_id", 1));
+		PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(documentCollection, noOpPreWriteProcessor, "test");
+
+		writeBack.write(new PatchedDocument(new Document("_id", 1), new Document("_id", "1")));
+		writeBack.awaitCompletion();
+
+		assertNull(documentCollection.findById(1));
+		assertThat(documentCollection.findById("1"), is(new Document("_id", "1")));
+	}
+
+	@Test
+	public void doesNotRecreateDocumentsRemovedAfterTheyWereLoaded() {
+		documentCollection.insert(new Document("_id", 1));
+		PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(documentCollection, noOpPreWriteProcessor, "test");
+
+		writeBack.write(new PatchedDocument(new Document("_id", 1), new Document("_id", 1).append("patched", true)));
+		writeBack.write(new PatchedDocument(new Document("_id", 2), new Document("_id", 2).append("patched", true)));
+		writeBack.awaitCompletion();
+
+		assertNull(documentCollection.findById(2));
+		assertThat(writeBack.getNumWrittenDocuments(), is(1L));
+		assertThat(writeBack.getNumMissingDocuments(), is(1L));
+	}
+
+	@Test
+	public void rethrowsWriteFailureOnCompletion() {
+		documentCollection.setMockedBulkException(() -> new IllegalStateException("Failed to write"));
+		PatchedDocumentWriteBack writeBack = new PatchedDocumentWriteBack(documentCollection, noOpPreWriteProcessor, "test", 10, 10);
+
+		for (int id = 0; id < 5; id++) {
+			writeBack.write(new PatchedDocument(new Document("_id", id), new Document("_id", id)));
+		}
+
+		assertThrows(IllegalStateException.class, writeBack::awaitCompletion);
+	}
+
+}
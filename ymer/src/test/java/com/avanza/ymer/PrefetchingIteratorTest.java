@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.stream.Collectors.toList;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class PrefetchingIteratorTest {
+
+	@Test
+	public void shouldReturnAllElementsInOrder() {
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(IntStream.rangeClosed(1, 1000).boxed(), 10, 1_000, i -> 8, "test-")) {
+			assertThat(prefetched.collect(toList()), contains(IntStream.rangeClosed(1, 1000).boxed().toArray()));
+		}
+	}
+
+	@Test
+	public void shouldPrefetchAtMostMaxElements() throws Exception {
+		AtomicInteger read = new AtomicInteger();
+		Stream<Integer> source = IntStream.rangeClosed(1, 100).boxed().peek(i -> read.incrementAndGet());
+
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(source, 3, 1_000, i -> 1, "test-")) {
+			// Three elements are buffered and the fourth waits for room in the buffer
+			await().untilAtomic(read, is(4));
+			Thread.sleep(100);
+			assertThat(read.get(), is(4));
+
+			Iterator<Integer> elements = prefetched.iterator();
+			assertThat(elements.next(), is(1));
+			await().untilAtomic(read, is(5));
+		}
+	}
+
+	@Test
+	public void shouldPrefetchAtMostMaxBytes() throws Exception {
+		AtomicInteger read = new AtomicInteger();
+		Stream<Integer> source = IntStream.rangeClosed(1, 100).boxed().peek(i -> read.incrementAndGet());
+
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(source, 100, 25, i -> 10, "test-")) {
+			// Two elements fit in the byte budget and the third waits for room in the buffer
+			await().untilAtomic(read, is(3));
+			Thread.sleep(100);
+			assertThat(read.get(), is(3));
+		}
+	}
+
+	@Test
+	public void shouldPrefetchElementLargerThanMaxBytes() {
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(Stream.of(1, 2, 3), 10, 10, i -> 100, "test-")) {
+			assertThat(prefetched.collect(toList()), contains(1, 2, 3));
+		}
+	}
+
+	@Test
+	public void shouldCloseSourceStream() {
+		LongAdder closed = new LongAdder();
+
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(Stream.of(1, 2, 3).onClose(closed::increment), 10, 1_000, i -> 1, "test-")) {
+			assertThat(prefetched.count(), is(3L));
+		}
+		assertThat(closed.intValue(), is(1));
+	}
+
+	@Test
+	public void shouldRethrowFailureFromSourceAfterPrefetchedElements() {
+		Stream<Integer> source = Stream.of(1, 2, 3).map(i -> {
+			if (i == 3) {
+				throw new IllegalArgumentException("failed on " + i);
+			}
+			return i;
+		});
+
+		try (Stream<Integer> prefetched = PrefetchingIterator.prefetch(source, 10, 1_000, i -> 1, "test-")) {
+			Iterator<Integer> elements = prefetched.iterator();
+			assertThat(elements.next(), is(1));
+			assertThat(elements.next(), is(2));
+			IllegalStateException exception = assertThrows(IllegalStateException.class, elements::hasNext);
+			assertThat(exception.getCause().getMessage(), is("failed on 3"));
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+public class ProjectedDocumentCollectionTest {
+
+	private final DocumentCollection delegate = mock(DocumentCollection.class);
+	private final ProjectedDocumentCollection target = new ProjectedDocumentCollection(delegate, new Document("history", 0));
+
+	@Test
+	public void excludesFieldsWhenReadingByTemplate() {
+		when(delegate.findByQuery(any())).thenReturn(Stream.empty());
+
+		target.findByTemplate(new Document("name", "a")).close();
+
+		Query query = capturedQuery();
+		assertEquals(new Document("name", "a"), query.getQueryObject());
+		assertEquals(new Document("history", 0), query.getFieldsObject());
+	}
+
+	@Test
+	public void addsExcludedFieldsToExclusionProjectionOfQuery() {
+		when(delegate.findByQuery(any())).thenReturn(Stream.empty());
+
+		target.findByQuery(new BasicQuery(new Document(), new Document("_routingKey", 0)).with(Sort.by("_id"))).close();
+
+		Query query = capturedQuery();
+		assertEquals(new Document("history", 0).append("_routingKey", 0), query.getFieldsObject());
+		assertEquals(new Document("_id", 1), query.getSortObject());
+	}
+
+	@Test
+	public void keepsInclusionProjectionOfQuery() {
+		when(delegate.findByQuery(any())).thenReturn(Stream.empty());
+
+		target.findByQuery(new BasicQuery(new Document(), new Document("_id", 1).append("name", 1))).close();
+
+		assertEquals(new Document("_id", 1).append("name", 1), capturedQuery().getFieldsObject());
+	}
+
+	@Test
+	public void findsByIdUsingProjection() {
+		Document document = new Document("_id", 1);
+		when(delegate.findByQuery(any())).thenReturn(Stream.of(document));
+
+		assertEquals(document, target.findById(1));
+		assertEquals(new Document("_id", 1), capturedQuery().getQueryObject());
+	}
+
+	private Query capturedQuery() {
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		verify(delegate).findByQuery(query.capture());
+		return query.getValue();
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+
+import org.bson.BsonDouble;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.Test;
+
+public class RawDocumentTest {
+
+	private final DocumentCodec codec = new DocumentCodec();
+
+	@Test
+	public void readsOnlyRequestedFields() {
+		Document document = new Document("_id", "id-1")
+				.append("nested", new Document("_routingKey", 1))
+				.append("values", List.of(1, 2, 3))
+				.append(MirroredObject.DOCUMENT_ROUTING_KEY, 42)
+				.append(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, 3L)
+				.append("ratio", 1.5);
+		RawDocument rawDocument = new RawDocument(new RawBsonDocument(document, codec), codec);
+
+		Document fields = rawDocument.readFields(Set.of("_id", MirroredObject.DOCUMENT_ROUTING_KEY, MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, "ratio", "missing"));
+
+		assertEquals(new Document("_id", "id-1")
+				.append(MirroredObject.DOCUMENT_ROUTING_KEY, 42)
+				.append(MirroredObject.DOCUMENT_FORMAT_VERSION_PROPERTY, 3L)
+				.append("ratio", new BsonDouble(1.5)), fields);
+	}
+
+	@Test
+	public void decodesWholeDocument() {
+		Document document = new Document("_id", 1)
+				.append("nested", new Document("value", "a"))
+				.append("values", List.of(1, 2, 3));
+		RawDocument rawDocument = new RawDocument(new RawBsonDocument(document, codec), codec);
+
+		assertEquals(document, rawDocument.decode());
+	}
+
+}
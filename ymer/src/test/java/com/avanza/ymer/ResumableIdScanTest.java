@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import com.mongodb.MongoException;
+
+public class ResumableIdScanTest {
+
+	private final IdCheckpoint checkpoint = new IdCheckpoint("test");
+	private final List<Document> filters = new ArrayList<>();
+
+	@Test
+	public void resumesAfterLastReadIdWhenReadingFails() {
+		List<Integer> ids = ResumableIdScan.scan(failingAfter(3, 2), checkpoint, 0)
+				.map(document -> document.getInteger("_id"))
+				.collect(toList());
+
+		assertThat(ids, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+		assertThat(filters, contains(new Document(), ResumableIdScan.idsAfter(2), ResumableIdScan.idsAfter(5)));
+		assertThat(checkpoint.getNumResumes(), is(2));
+		assertThat(checkpoint.getNumDocuments(), is(10L));
+		assertThat(checkpoint.getLastId(), is(9));
+		assertThat(checkpoint.isComplete(), is(true));
+	}
+
+	@Test
+	public void rethrowsFailureWhenMaxNumberOfResumesIsReached() {
+		Stream<Document> documents = ResumableIdScan.scan(failingAfter(0, Integer.MAX_VALUE), checkpoint, 0);
+
+		assertThrows(MongoException.class, () -> documents.collect(toList()));
+		assertThat(checkpoint.getNumResumes(), is(ResumableIdScan.MAX_RESUMES));
+		assertThat(checkpoint.isComplete(), is(false));
+	}
+
+	@Test
+	public void idsAfterMatchesGreaterIdsAndIdsOfTypesSortedAfterId() {
+		assertEquals(new Document("$or", List.of(
+				new Document("_id", new Document("$gt", "a")),
+				new Document("_id", new Document("$type", List.of("object", "binData", "objectId", "bool", "date", "timestamp"))))),
+				ResumableIdScan.idsAfter("a"));
+	}
+
+	@Test
+	public void idsAfterIdOfUnknownTypeOnlyMatchesGreaterIds() {
+		Object id = new Object();
+
+		assertEquals(new Document("_id", new Document("$gt", id)), ResumableIdScan.idsAfter(id));
+	}
+
+	/**
+	 * Reads the documents with ids 0 to 9, matching the filters created by the scan, and fails after reading the
+	 * given number of documents, the given number of times.
+	 */
+	private Function<Document, Stream<Document>> failingAfter(int numDocuments, int numFailures) {
+		int[] remainingFailures = {numFailures};
+		return filter -> {
+			filters.add(filter);
+			Object lastId = checkpoint.getLastId();
+			int firstId = lastId == null ? 0 : (Integer) lastId + 1;
+			boolean fail = remainingFailures[0]-- > 0;
+			return IntStream.range(firstId, 10)
+					.mapToObj(id -> {
+						if (fail && id == firstId + numDocuments) {
+							throw new MongoException("Cursor not found");
+						}
+						return new Document("_id", id);
+					});
+		};
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Avanza Bank AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.avanza.ymer;
+
+import static com.avanza.ymer.util.GigaSpacesInstanceIdUtil.getInstanceId;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class VirtualBucketsTest {
+
+	@Test
+	public void routingKeysInSameBucketAreRoutedToPartitionOfBucket() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			int routingKey = random.nextInt();
+			int bucket = VirtualBuckets.getBucket(routingKey, 5040);
+			for (int partitionCount : List.of(1, 2, 3, 7, 16, 60)) {
+				assertThat(bucket % partitionCount + 1, is(getInstanceId(routingKey, partitionCount)));
+			}
+		}
+	}
+
+	@Test
+	public void bucketsAreSplitEvenlyBetweenPartitions() {
+		assertThat(VirtualBuckets.getBuckets(8, 2, 4), is(Optional.of(List.of(1, 5))));
+	}
+
+	@Test
+	public void cannotSelectBucketsWhenPartitionCountDoesNotDivideNumberOfBuckets() {
+		assertThat(VirtualBuckets.getBuckets(4096, 1, 3), is(Optional.empty()));
+	}
+
+	@Test
+	public void selectsDocumentsWithoutBucketUsingRoutingFilter() {
+		Document routingFilter = new Document(MirroredObject.DOCUMENT_ROUTING_KEY, 1);
+
+		Document filter = VirtualBuckets.createFilter(List.of(0, 2), routingFilter);
+
+		assertEquals(new Document("$or", List.of(
+				new Document(MirroredObject.DOCUMENT_BUCKET, new Document("$in", List.of(0, 2))),
+				new Document("$and", List.of(new Document(MirroredObject.DOCUMENT_BUCKET, new Document("$exists", false)), routingFilter))
+		)), filter);
+	}
+
+	@Test
+	public void bucketOfExtremeHashCodesIsNonNegative() {
+		assertThat(VirtualBuckets.getBucket(Integer.MIN_VALUE, 5040) >= 0, is(true));
+	}
+
+}
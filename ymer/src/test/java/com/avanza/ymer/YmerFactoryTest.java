@@ -17,6 +17,7 @@ package com.avanza.ymer;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -26,6 +27,7 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.bson.Document;
 import org.junit.Before;
@@ -89,6 +91,24 @@ public class YmerFactoryTest {
 		assertThat(testSpaceReadPreferenceCaptor.getValue(), equalTo(ReadPreference.primaryPreferred()));
 	}
 
+	@Test
+	public void shouldReadFromCollectionWithReadPreference() {
+		@SuppressWarnings("unchecked")
+		MongoCollection<Document> secondaryCollection = createMockedEmptyCollection();
+		doReturn(secondaryCollection).when(testSpaceObjectCollection).withReadPreference(ReadPreference.secondaryPreferred());
+		final Collection<MirroredObjectDefinition<?>> definitions = List.of(MirroredObjectDefinition.create(TestSpaceObject.class));
+		final YmerFactory factory = new YmerFactory(createMockedFactory(db),
+													mock(MongoConverter.class),
+													definitions)
+				.withReadPreference(ReadPreference.secondaryPreferred());
+
+		final YmerSpaceDataSource ysds = (YmerSpaceDataSource) factory.createSpaceDataSource();
+		ysds.setClusterInfo(new ClusterInfo("schema", 1, 1, 1, 1));
+		ysds.initialDataLoad().forEachRemaining(new ArrayList<>()::add);
+
+		verify(secondaryCollection).find();
+	}
+
 	private MongoDatabaseFactory createMockedFactory(MongoDatabase db) {
 		MongoDatabaseFactory mongoDbFactory = mock(MongoDatabaseFactory.class);
 		when(mongoDbFactory.getMongoDatabase()).thenReturn(db);
@@ -104,6 +124,7 @@ public class YmerFactoryTest {
 		doReturn(mongoCursor).when(findIterable).iterator();
 		doCallRealMethod().when(findIterable).spliterator();
 		doReturn(findIterable).when(collection).find();
+		doReturn(collection).when(collection).withReadPreference(any());
 		doReturn(new MongoNamespace("test.1")).when(collection).getNamespace();
 		return collection;
 	}
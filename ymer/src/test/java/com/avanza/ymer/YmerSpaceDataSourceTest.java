@@ -17,14 +17,30 @@ package com.avanza.ymer;
 
 import static com.avanza.ymer.StreamMatchers.hasCount;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
-
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.Logger;
@@ -33,6 +49,8 @@ import org.apache.logging.log4j.message.Message;
 import org.apache.logging.log4j.test.appender.ListAppender;
 import org.awaitility.Awaitility;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -42,6 +60,8 @@ import org.springframework.data.mongodb.core.query.Query;
 import com.avanza.ymer.YmerSpaceDataSource.InitialLoadCompleteDispatcher;
 import com.gigaspaces.annotation.pojo.SpaceRouting;
 import com.gigaspaces.datasource.DataIterator;
+import com.gigaspaces.datasource.DataSourceIdQuery;
+import com.gigaspaces.metadata.SpaceTypeDescriptor;
 
 public class YmerSpaceDataSourceTest {
 
@@ -94,6 +114,35 @@ public class YmerSpaceDataSourceTest {
 		assertThat(loadInitialLoadData, hasCount(1));
 	}
 
+	@Test
+	public void registersInitialLoadMBeansPerPartitionAndUnregistersThemOnClose() throws Exception {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		YmerSpaceDataSource partition1 = createExportingDataSource(mirroredObject, 1);
+		YmerSpaceDataSource partition2 = createExportingDataSource(mirroredObject, 2);
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName statisticsPartition1 = ObjectName.getInstance("se.avanzabank.space.mirror:type=InitialLoadStatistics,cluster=\"test-space\",instance=1,name=collection_" + mirroredObject.getCollectionName());
+		ObjectName executorPartition2 = ObjectName.getInstance("se.avanzabank.space.mirror:type=InitialLoadExecutor,cluster=\"test-space\",instance=2,name=initialLoadExecutor");
+		try {
+			assertTrue(mbeanServer.isRegistered(statisticsPartition1));
+			assertTrue(mbeanServer.isRegistered(executorPartition2));
+		} finally {
+			partition1.close();
+			partition2.close();
+		}
+		assertFalse(mbeanServer.isRegistered(statisticsPartition1));
+		assertFalse(mbeanServer.isRegistered(executorPartition2));
+	}
+
+	private YmerSpaceDataSource createExportingDataSource(MirroredObject<FakeSpaceObject> mirroredObject, int instanceId) {
+		SpaceMirrorContext spaceMirror = new SpaceMirrorContext(new MirroredObjects(mirroredObject), FakeDocumentConverter.create(), FakeDocumentDb.create(), SpaceMirrorContext.NO_EXCEPTION_LISTENER, Plugins.empty(), 1);
+		YmerSpaceDataSource ymerSpaceDataSource = new YmerSpaceDataSource(spaceMirror);
+		ymerSpaceDataSource.setExportInitialLoadMBeans(true);
+		ClusterInfo clusterInfo = new ClusterInfo("", instanceId, null, numberOfInstances, 0);
+		clusterInfo.setName("test-space");
+		ymerSpaceDataSource.setClusterInfo(clusterInfo);
+		return ymerSpaceDataSource;
+	}
+
 	@Test
 	public void loadsAndPatchesASingleDocumentById() throws Exception {
 		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
@@ -135,6 +184,79 @@ public class YmerSpaceDataSourceTest {
 	}
 
 
+	@Test
+	public void loadsAndPatchesDocumentsByIdsInOneBulkWrite() {
+		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
+		MirroredObject<TestReloadableSpaceObject> mirroredObject = MirroredObjectDefinition.create(TestReloadableSpaceObject.class).documentPatches(patches).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentDb documentDb = FakeDocumentDb.create();
+		SpaceMirrorContext spaceMirror = new SpaceMirrorContext(
+				new MirroredObjects(mirroredObject),
+				TestSpaceObjectFakeConverter.create(),
+				documentDb,
+				SpaceMirrorContext.NO_EXCEPTION_LISTENER,
+				Plugins.empty(),
+				1);
+		YmerSpaceDataSource externalDataSourceForPartition1 = new YmerSpaceDataSource(spaceMirror);
+		externalDataSourceForPartition1.setClusterInfo(new ClusterInfo("", instanceId, null, numberOfInstances, 0));
+
+		DocumentCollection documentCollection = documentDb.getCollection(mirroredObject.getCollectionName());
+		for (int id = 1; id <= 4; id++) {
+			Document document = new Document();
+			document.put("_id", id);
+			document.put("spaceRouting", id);
+			document.put("versionID", 1);
+			documentCollection.insert(document);
+		}
+
+		// Objects are routed by id, objects with odd ids belong to the other partition
+		List<TestReloadableSpaceObject> spaceObjects = externalDataSourceForPartition1.loadObjectsByIds(TestReloadableSpaceObject.class, List.of(1, 2, 3, 4, 5));
+
+		assertThat(spaceObjects.size(), is(2));
+		assertFalse(mirroredObject.requiresPatching(new Document(documentCollection.findById(2))));
+		assertFalse(mirroredObject.requiresPatching(new Document(documentCollection.findById(4))));
+	}
+
+	@Test
+	public void getsAndPatchesObjectByIdOnlyWhenItBelongsToThePartition() {
+		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
+		MirroredObject<TestReloadableSpaceObject> mirroredObject = MirroredObjectDefinition.create(TestReloadableSpaceObject.class).documentPatches(patches).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentDb documentDb = FakeDocumentDb.create();
+		SpaceMirrorContext spaceMirror = new SpaceMirrorContext(
+				new MirroredObjects(mirroredObject),
+				TestSpaceObjectFakeConverter.create(),
+				documentDb,
+				SpaceMirrorContext.NO_EXCEPTION_LISTENER,
+				Plugins.empty(),
+				1);
+		YmerSpaceDataSource externalDataSourceForPartition1 = new YmerSpaceDataSource(spaceMirror);
+		externalDataSourceForPartition1.setClusterInfo(new ClusterInfo("", instanceId, null, numberOfInstances, 0));
+
+		DocumentCollection documentCollection = documentDb.getCollection(mirroredObject.getCollectionName());
+		for (int id = 1; id <= 2; id++) {
+			Document document = new Document();
+			document.put("_id", id);
+			document.put("spaceRouting", id);
+			document.put("versionID", 1);
+			documentCollection.insert(document);
+		}
+
+		// Objects are routed by id, objects with odd ids belong to the other partition
+		assertNotNull(externalDataSourceForPartition1.getById(idQuery(TestReloadableSpaceObject.class, 2)));
+		assertNull(externalDataSourceForPartition1.getById(idQuery(TestReloadableSpaceObject.class, 1)));
+		assertNull(externalDataSourceForPartition1.getById(idQuery(TestReloadableSpaceObject.class, 4)));
+		assertFalse(mirroredObject.requiresPatching(new Document(documentCollection.findById(2))));
+		assertNull(documentCollection.findById(4));
+	}
+
+	private static DataSourceIdQuery idQuery(Class<?> spaceType, Object id) {
+		SpaceTypeDescriptor typeDescriptor = mock(SpaceTypeDescriptor.class);
+		doReturn(spaceType).when(typeDescriptor).getObjectClass();
+		DataSourceIdQuery idQuery = mock(DataSourceIdQuery.class);
+		when(idQuery.getTypeDescriptor()).thenReturn(typeDescriptor);
+		when(idQuery.getId()).thenReturn(id);
+		return idQuery;
+	}
+
 	@Test
 	public void testLoggning() {
 		BsonDocumentPatch[] patches = { new FakeSpaceObjectV1Patch() };
@@ -168,6 +290,79 @@ public class YmerSpaceDataSourceTest {
 					   is(true));
 	}
 
+	@Test
+	public void completesInitialLoadOnceWhenExhaustedIteratorIsAskedAgain() {
+		MirroredObject<FakeSpaceObject> mirroredObject = MirroredObjectDefinition.create(FakeSpaceObject.class).buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentDb fakeDb = FakeDocumentDb.create();
+		SpaceMirrorContext spaceMirror = new SpaceMirrorContext(new MirroredObjects(mirroredObject), FakeDocumentConverter.create(), fakeDb, SpaceMirrorContext.NO_EXCEPTION_LISTENER, Plugins.empty(), 1);
+		YmerSpaceDataSource ymerSpaceDataSource = new YmerSpaceDataSource(spaceMirror);
+		ymerSpaceDataSource.setClusterInfo(new ClusterInfo("", instanceId, null, numberOfInstances, 0));
+		fakeDb.getCollection(mirroredObject.getCollectionName()).insert(new Document("_id", 2).append("spaceRouting", 2));
+
+		DataIterator<Object> objectDataIterator = ymerSpaceDataSource.initialDataLoad();
+		while (objectDataIterator.hasNext()) {
+			objectDataIterator.next();
+		}
+
+		assertFalse(objectDataIterator.hasNext());
+		assertFalse(objectDataIterator.hasNext());
+		assertThat(appender.getEvents().stream()
+				.map(LogEvent::getMessage)
+				.map(Message::getFormattedMessage)
+				.filter(message -> message.startsWith("Initial load complete"))
+				.count(), is(1L));
+	}
+
+	@Test
+	public void loadsRemainingDocumentsInBackgroundAndSkipsObjectsAlreadyInSpace() {
+		MirroredObject<TestReloadableSpaceObject> mirroredObject = MirroredObjectDefinition.create(TestReloadableSpaceObject.class)
+				.hotInitialLoadTemplateFactory((partitionCount, instanceId) -> new Document("hot", true))
+				.buildMirroredDocument(MirroredObjectDefinitionsOverride.noOverride());
+		DocumentCollection documentCollection = new TemplateMatchingDocumentCollection();
+		DocumentDb documentDb = DocumentDb.create((name, readPreference) -> documentCollection);
+		SpaceMirrorContext spaceMirror = new SpaceMirrorContext(new MirroredObjects(mirroredObject), TestSpaceObjectFakeConverter.create(), documentDb, SpaceMirrorContext.NO_EXCEPTION_LISTENER, Plugins.empty(), 1);
+		// Objects are routed by id, objects with odd ids belong to the other partition
+		for (int id = 2; id <= 8; id += 2) {
+			documentCollection.insert(new Document("_id", id).append("versionID", 1).append("hot", id == 2));
+		}
+		Map<Integer, TestReloadableSpaceObject> space = new ConcurrentHashMap<>();
+		// loaded on demand before the background load reaches it
+		space.put(4, new TestReloadableSpaceObject(4, 4, false, 1, null));
+		BackgroundLoader backgroundLoader = new BackgroundLoader(object -> {
+			TestReloadableSpaceObject spaceObject = (TestReloadableSpaceObject) object;
+			if (space.putIfAbsent(spaceObject.getId(), spaceObject) != null) {
+				throw new IllegalStateException("Entry already in space: " + spaceObject);
+			}
+		});
+		YmerSpaceDataSource ymerSpaceDataSource = new YmerSpaceDataSource(spaceMirror);
+		ymerSpaceDataSource.setClusterInfo(new ClusterInfo("", instanceId, null, numberOfInstances, 0));
+		ymerSpaceDataSource.setBackgroundLoader(backgroundLoader);
+
+		List<Object> initiallyLoaded = new ArrayList<>();
+		DataIterator<Object> objectDataIterator = ymerSpaceDataSource.initialDataLoad();
+		while (objectDataIterator.hasNext()) {
+			initiallyLoaded.add(objectDataIterator.next());
+		}
+
+		assertThat(initiallyLoaded, contains(new TestReloadableSpaceObject(2, 2, false, 1, null)));
+		Awaitility.await().until(() -> space.keySet(), containsInAnyOrder(4, 6, 8));
+		assertThat(backgroundLoader.getNumFailedObjects(), is(1L));
+	}
+
+	@Test
+	public void ordersCollectionsByDescendingDataSize() {
+		Map<String, OptionalLong> dataSizes = Map.of(
+				"a", OptionalLong.of(10),
+				"b", OptionalLong.empty(),
+				"c", OptionalLong.of(300),
+				"d", OptionalLong.of(10),
+				"e", OptionalLong.of(20));
+
+		List<String> ordered = YmerSpaceDataSource.largestFirst(List.of("a", "b", "c", "d", "e"), dataSizes::get);
+
+		assertThat(ordered, contains("c", "e", "a", "d", "b"));
+	}
+
 	private static class FakeSpaceObject {
 
 		private int id;
@@ -206,6 +401,30 @@ public class YmerSpaceDataSourceTest {
 
 	}
 
+	/**
+	 * Supports the field equality and $nor templates that hot initial load combines the template with.
+	 */
+	private static class TemplateMatchingDocumentCollection extends FakeDocumentCollection {
+
+		@Override
+		public Stream<Document> findByTemplate(Document template) {
+			return findAll().filter(document -> matches(document, template));
+		}
+
+		@Override
+		public Stream<RawDocument> findRawByTemplate(Document template) {
+			DocumentCodec codec = new DocumentCodec();
+			return findByTemplate(template).map(document -> new RawDocument(new RawBsonDocument(document, codec), codec));
+		}
+
+		@SuppressWarnings("unchecked")
+		private static boolean matches(Document document, Document template) {
+			return template.entrySet().stream().allMatch(entry -> entry.getKey().equals("$nor")
+					? ((List<Document>) entry.getValue()).stream().noneMatch(nor -> matches(document, nor))
+					: Objects.equals(document.get(entry.getKey()), entry.getValue()));
+		}
+	}
+
 	private static class FakeSpaceObjectV1Patch implements BsonDocumentPatch {
 
 		@Override
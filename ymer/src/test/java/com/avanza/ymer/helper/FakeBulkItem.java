@@ -24,10 +24,16 @@ public class FakeBulkItem implements DataSyncOperation {
 
 	private final Object item;
 	private final DataSyncOperationType operation;
+	private final Object spaceId;
 
 	public FakeBulkItem(Object item, DataSyncOperationType operation) {
+		this(item, operation, null);
+	}
+
+	public FakeBulkItem(Object item, DataSyncOperationType operation, Object spaceId) {
 		this.item = item;
 		this.operation = operation;
+		this.spaceId = spaceId;
 	}
 
 	@Override
@@ -42,7 +48,7 @@ public class FakeBulkItem implements DataSyncOperation {
 
 	@Override
 	public Object getSpaceId() {
-		return null;
+		return spaceId;
 	}
 
 	@Override
@@ -67,7 +73,7 @@ public class FakeBulkItem implements DataSyncOperation {
 
 	@Override
 	public boolean supportsGetSpaceId() {
-		return false;
+		return spaceId != null;
 	}
 
 	@Override